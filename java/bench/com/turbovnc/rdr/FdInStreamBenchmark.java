@@ -0,0 +1,96 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- FdInStreamBenchmark - measures how FdInStream refills its buffer
+// (overrun()) when reading 1 MB of data in items of various sizes.  The data
+// comes from an in-memory FileDescriptor that returns at most segmentSize
+// bytes per read, in order to emulate the segments that a socket returns.
+
+package com.turbovnc.rdr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.turbovnc.network.FileDescriptor;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FdInStreamBenchmark {
+
+  static final int LENGTH = 1024 * 1024;
+
+  @Param({ "1448", "16384", "65536" })
+  public int segmentSize;
+
+  // Size of each read from the FdInStream.  4 = readU32(), 3072 = a row of
+  // 32-bit pixels, which is less than MIN_BULK_SIZE, and 65536 = a bulk
+  // read, which bypasses the FdInStream buffer.
+  @Param({ "4", "3072", "65536" })
+  public int itemSize;
+
+  FdInStream is;
+  byte[] buf;
+
+  // A FileDescriptor that endlessly returns the same bytes and never blocks
+  static final class MemFileDescriptor implements FileDescriptor {
+
+    MemFileDescriptor(int segmentSize) {
+      this.segmentSize = segmentSize;
+    }
+
+    public int read(byte[] buf, int bufPtr, int length) {
+      int n = Math.min(length, segmentSize);
+      for (int i = 0; i < n; i++)
+        buf[bufPtr + i] = (byte)(pos++);
+      return n;
+    }
+
+    public int write(byte[] buf, int bufPtr, int length) { return length; }
+
+    public int select(int interestOps, Integer timeout) { return 1; }
+
+    public void close() {}
+
+    private final int segmentSize;
+    private int pos;
+  }
+
+  @Setup
+  public void setup() {
+    is = new FdInStream(new MemFileDescriptor(segmentSize));
+    buf = new byte[itemSize];
+  }
+
+  @Benchmark
+  public Object read() {
+    if (itemSize == 4) {
+      int sum = 0;
+      for (int i = 0; i < LENGTH; i += 4)
+        sum += is.readU32();
+      return sum;
+    }
+    for (int i = 0; i < LENGTH; i += itemSize)
+      is.readBytes(buf, 0, itemSize);
+    return buf;
+  }
+}
@@ -0,0 +1,98 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- InStreamBenchmark - reads 64x64 blocks of pixels from a MemInStream.
+//
+// toInt reads pixels into an int array, as the ZRLE and Hextile decoders do.
+// toFramebuffer reads pixels into a framebuffer of the native type for the
+// pixel format, as the Raw decoder does.
+
+package com.turbovnc.rdr;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.turbovnc.rfb.Rect;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class InStreamBenchmark {
+
+  static final int TILE = 64;
+  static final int STRIDE = 1024;
+
+  @State(Scope.Thread)
+  public static class ToInt {
+    // 3 = 24-bit ZRLE CPIXELs
+    @Param({ "1", "2", "3", "4" })
+    public int bytesPerPixel;
+
+    MemInStream is;
+    final int[] buf = new int[TILE * TILE];
+
+    @Setup
+    public void setup() {
+      is = newStream(TILE * TILE * bytesPerPixel);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ToFramebuffer {
+    @Param({ "8", "16", "32" })
+    public int bpp;
+
+    MemInStream is;
+    Object fb;
+    final Rect r = new Rect(TILE, TILE, TILE * 2, TILE * 2);
+
+    @Setup
+    public void setup() {
+      is = newStream(TILE * TILE * bpp / 8);
+      switch (bpp) {
+        case 8:   fb = new byte[STRIDE * TILE * 2];  break;
+        case 16:  fb = new short[STRIDE * TILE * 2];  break;
+        default:  fb = new int[STRIDE * TILE * 2];
+      }
+    }
+  }
+
+  static MemInStream newStream(int len) {
+    byte[] data = new byte[len];
+    new Random(1).nextBytes(data);
+    return new MemInStream(data, 0, len);
+  }
+
+  @Benchmark
+  public int[] toInt(ToInt state) {
+    state.is.reposition(0);
+    state.is.readPixels(state.buf, TILE * TILE, state.bytesPerPixel, false);
+    return state.buf;
+  }
+
+  @Benchmark
+  public Object toFramebuffer(ToFramebuffer state) {
+    state.is.reposition(0);
+    state.is.readPixels(state.fb, STRIDE, state.r, state.bpp / 8, false);
+    return state.fb;
+  }
+}
@@ -0,0 +1,96 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- ZlibInStreamBenchmark - inflates 1 MB of compressible data through a
+// ZlibInStream, either in bulk or one 32-bit item at a time (which is how
+// the ZRLE decoder reads tile headers and run lengths.)
+
+package com.turbovnc.rdr;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ZlibInStreamBenchmark {
+
+  static final int LENGTH = 1024 * 1024;
+
+  @Param({ ZlibInflater.NATIVE, ZlibInflater.JZLIB })
+  public String zlib;
+
+  byte[] compressed;
+  int compressedLen;
+  final byte[] buf = new byte[4096];
+
+  @Setup
+  public void setup() {
+    System.setProperty("turbovnc.zlib", zlib);
+
+    // Runs of random length, like the output of an RLE or palette encoder
+    byte[] data = new byte[LENGTH];
+    Random rnd = new Random(1);
+    for (int i = 0; i < LENGTH;) {
+      int len = Math.min(LENGTH - i, 1 + rnd.nextInt(32));
+      byte value = (byte)rnd.nextInt(16);
+      for (int end = i + len; i < end; i++)
+        data[i] = value;
+    }
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    compressed = new byte[LENGTH * 2];
+    compressedLen = deflater.deflate(compressed, 0, compressed.length,
+                                     Deflater.SYNC_FLUSH);
+    deflater.end();
+  }
+
+  // A new ZlibInStream is needed for each invocation, because the zlib
+  // stream can't be rewound.
+  ZlibInStream newStream() {
+    ZlibInStream zis = new ZlibInStream();
+    zis.setUnderlying(new MemInStream(compressed, 0, compressedLen),
+                      compressedLen);
+    return zis;
+  }
+
+  @Benchmark
+  public byte[] readBytes() {
+    ZlibInStream zis = newStream();
+    for (int i = 0; i < LENGTH; i += buf.length)
+      zis.readBytes(buf, 0, buf.length);
+    zis.close();
+    return buf;
+  }
+
+  @Benchmark
+  public int readU32() {
+    ZlibInStream zis = newStream();
+    int sum = 0;
+    for (int i = 0; i < LENGTH; i += 4)
+      sum += zis.readU32();
+    zis.close();
+    return sum;
+  }
+}
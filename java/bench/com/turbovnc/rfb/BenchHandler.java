@@ -0,0 +1,155 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- BenchHandler - a CMsgHandler that decodes into an in-memory framebuffer
+// and ignores everything else, so the benchmarks measure only the decoders.
+
+package com.turbovnc.rfb;
+
+import java.util.Arrays;
+
+import com.turbovnc.rdr.*;
+
+public class BenchHandler extends CMsgHandler {
+
+  public BenchHandler(Corpus corpus) {
+    this.corpus = corpus;
+    cp.width = corpus.width;
+    cp.height = corpus.height;
+    cp.setPF(corpus.pf);
+    switch (corpus.pf.bpp) {
+      case 8:   fb = new byte[corpus.width * corpus.height];  break;
+      case 16:  fb = new short[corpus.width * corpus.height];  break;
+      default:  fb = new int[corpus.width * corpus.height];
+    }
+    is = new MemInStream(corpus.data, 0, corpus.length);
+    reader = new CMsgReader(this, is);
+    params = new Params();
+  }
+
+  // Decode the whole corpus, starting with fresh zlib streams, and return
+  // the framebuffer.
+  public Object replay() {
+    is.reposition(0);
+    reader.reset();
+    while (is.pos() < corpus.length)
+      reader.readMsg(params);
+    reader.flush();
+    return fb;
+  }
+
+  public void close() {
+    reader.close();
+  }
+
+  public int getUpdates() { return updates; }
+
+  void handleClipboardNotify(int flags) {}
+  void handleClipboardPeek(int flags) {}
+  void handleClipboardProvide(int flags, int[] lengths, byte[][] buffers) {}
+  void handleClipboardRequest(int flags) {}
+
+  public void enableGII() {}
+  public void giiDeviceCreated(int deviceOrigin) {}
+  public void enableQEMUExtKeyEvent() {}
+  public void setLEDState(int state) {}
+  public void enableExtMouseButtons() {}
+  public void setCursor(int width, int height, Point hotspot, int[] data,
+                        byte[] mask) {}
+  public void serverInit() {}
+
+  public void framebufferUpdateStart() {}
+  public void framebufferUpdateEnd() { updates++; }
+  public void beginRect(Rect r, int encoding) {}
+  public void endRect(Rect r, int encoding) {}
+  public void startDecodeTimer() {}
+  public void stopDecodeTimer() {}
+
+  public void setColourMapEntries(int firstColour, int nColours,
+                                  int[] rgbs) {}
+  public void bell() {}
+  public void serverCutText(String str) {}
+
+  public void setDesktopSize(int width, int height) {
+    if (width != cp.width || height != cp.height)
+      throw new ErrorException("Corpus changes the framebuffer size");
+  }
+
+  public void fillRect(Rect r, int pix) {
+    int w = r.width(), stride = cp.width;
+    for (int y = r.tl.y; y < r.br.y; y++) {
+      int ptr = y * stride + r.tl.x;
+      if (fb instanceof byte[])
+        Arrays.fill((byte[])fb, ptr, ptr + w, (byte)pix);
+      else if (fb instanceof short[])
+        Arrays.fill((short[])fb, ptr, ptr + w, (short)pix);
+      else
+        Arrays.fill((int[])fb, ptr, ptr + w, pix);
+    }
+  }
+
+  // ZRLE and Hextile always pass int[] pixels.
+  public void imageRect(Rect r, Object pixels) {
+    int[] src = (int[])pixels;
+    int w = r.width(), h = r.height(), stride = cp.width;
+    for (int y = 0, srcPtr = 0; y < h; y++, srcPtr += w) {
+      int ptr = (r.tl.y + y) * stride + r.tl.x;
+      if (fb instanceof int[]) {
+        System.arraycopy(src, srcPtr, fb, ptr, w);
+      } else if (fb instanceof short[]) {
+        short[] dst = (short[])fb;
+        for (int x = 0; x < w; x++)
+          dst[ptr + x] = (short)src[srcPtr + x];
+      } else {
+        byte[] dst = (byte[])fb;
+        for (int x = 0; x < w; x++)
+          dst[ptr + x] = (byte)src[srcPtr + x];
+      }
+    }
+  }
+
+  public void copyRect(Rect r, int srcX, int srcY) {
+    int w = r.width(), h = r.height(), stride = cp.width;
+    int dst = r.tl.y * stride + r.tl.x, src = srcY * stride + srcX;
+    int inc = stride;
+    if (r.tl.y > srcY) {
+      src += (h - 1) * inc;
+      dst += (h - 1) * inc;
+      inc = -inc;
+    }
+    for (; h > 0; h--, src += inc, dst += inc)
+      System.arraycopy(fb, src, fb, dst, w);
+  }
+
+  public Object getRawPixelsRW(int[] stride) {
+    stride[0] = cp.width;
+    return fb;
+  }
+
+  public void releaseRawPixels(Rect r) {}
+
+  public PixelFormat getPreferredPF() { return cp.pf(); }
+  public CSecurity getCurrentCSecurity() { return null; }
+
+  private final Corpus corpus;
+  private final Object fb;
+  private final MemInStream is;
+  private final CMsgReader reader;
+  private final Params params;
+  private int updates;
+}
@@ -0,0 +1,545 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- Corpus - a sequence of RFB server-to-client messages for the decoder
+// benchmarks.
+//
+// Synthetic corpora are generated deterministically from a seed, so they are
+// identical from run to run and from build to build.  Recorded corpora are
+// session captures in the same format that the -bench option of the
+// TurboVNC Viewer replays: a ServerInit message followed by the messages
+// that the server sent.
+
+package com.turbovnc.rfb;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.zip.Deflater;
+import javax.imageio.*;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.turbovnc.rdr.*;
+
+public final class Corpus {
+
+  public static final int WIDTH = 1024;
+  public static final int HEIGHT = 768;
+  public static final int UPDATES = 16;
+  public static final long SEED = 1;
+
+  // Tight subencodings that the synthetic Tight corpora can contain.  Each
+  // rectangle in a single-kind corpus uses the same subencoding.
+  public static final String FILL = "fill";
+  public static final String MONO = "mono";
+  public static final String PALETTE = "palette";
+  public static final String GRADIENT = "gradient";
+  public static final String COPY = "copy";
+  public static final String JPEG = "jpeg";
+
+  // Names of the synthetic session corpora.  Any other name is treated as
+  // the file name of a session capture.
+  public static final String TIGHT = "tight";
+  public static final String ZRLE = "zrle";
+  public static final String HEXTILE = "hextile";
+
+  public final int width, height;
+  public final PixelFormat pf;
+  // The messages occupy data[0] through data[length - 1].  data is padded,
+  // because the zlib decoders may check for more input than they consume.
+  public final byte[] data;
+  public final int length;
+
+  Corpus(int width, int height, PixelFormat pf, byte[] data, int length) {
+    this.width = width;
+    this.height = height;
+    this.pf = pf;
+    this.data = data;
+    this.length = length;
+  }
+
+  public static PixelFormat pixelFormat(int bpp) {
+    switch (bpp) {
+      case 8:   return new PixelFormat(8, 8, false, true, 7, 7, 3, 5, 2, 0);
+      case 16:  return new PixelFormat(16, 16, false, true, 31, 63, 31, 11,
+                                       5, 0);
+      case 32:  return new PixelFormat(32, 24, false, true, 255, 255, 255,
+                                       16, 8, 0);
+    }
+    throw new IllegalArgumentException("Unsupported bpp " + bpp);
+  }
+
+  // Return the synthetic session corpus with the given name, or load the
+  // session capture with the given file name.  bpp applies only to synthetic
+  // corpora.
+  public static Corpus get(String name, int bpp) throws IOException {
+    if (name.equals(TIGHT))
+      return tight(null, bpp, SEED);
+    if (name.equals(ZRLE))
+      return zrle(bpp, SEED);
+    if (name.equals(HEXTILE))
+      return hextile(bpp, SEED);
+    return load(name);
+  }
+
+  public static Corpus load(String fileName) throws IOException {
+    byte[] file;
+    DataInputStream dis = new DataInputStream(new FileInputStream(fileName));
+    try {
+      file = new byte[(int)new File(fileName).length()];
+      dis.readFully(file);
+    } finally {
+      dis.close();
+    }
+    MemInStream is = new MemInStream(file, 0, file.length);
+    int w = is.readU16();
+    int h = is.readU16();
+    PixelFormat pf = new PixelFormat();
+    pf.read(is);
+    is.readString();
+    int start = is.pos();
+    return new Corpus(w, h, pf, pad(Arrays.copyOfRange(file, start,
+                                                       file.length)),
+                      file.length - start);
+  }
+
+  // Generate a Tight corpus.  If kind is null, then the corpus contains a
+  // mixture of all subencodings that are valid for the pixel format, along
+  // with CopyRect rectangles.
+  public static Corpus tight(String kind, int bpp, long seed) {
+    Generator g = new Generator(bpp, seed);
+    Deflater[] zs = new Deflater[4];
+    for (int i = 0; i < 4; i++)
+      zs[i] = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    boolean truecolor = bpp > 8;
+    String[] mix = truecolor ?
+      new String[] { FILL, MONO, PALETTE, PALETTE, COPY, GRADIENT, JPEG,
+                     null } :
+      new String[] { FILL, MONO, PALETTE, PALETTE, COPY, null };
+    if ((GRADIENT.equals(kind) || JPEG.equals(kind)) && !truecolor)
+      throw new IllegalArgumentException("Tight " + kind +
+                                         " requires bpp > 8");
+
+    for (int u = 0; u < UPDATES; u++) {
+      int n = 8 + g.rnd.nextInt(8);
+      g.updateHeader(n);
+      for (int i = 0; i < n; i++) {
+        String k = kind != null ? kind : mix[g.rnd.nextInt(mix.length)];
+        Rect r = g.randomRect(16, 256, 16, 128);
+        if (k == null) {
+          g.rectHeader(r, RFB.ENCODING_COPYRECT);
+          g.u16(g.rnd.nextInt(WIDTH - r.width() + 1));
+          g.u16(g.rnd.nextInt(HEIGHT - r.height() + 1));
+          continue;
+        }
+        g.rectHeader(r, RFB.ENCODING_TIGHT);
+        g.tightRect(r, k, zs);
+      }
+    }
+    return g.finish();
+  }
+
+  public static Corpus zrle(int bpp, long seed) {
+    Generator g = new Generator(bpp, seed);
+    Deflater z = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    for (int u = 0; u < UPDATES; u++) {
+      int n = 1 + g.rnd.nextInt(4);
+      g.updateHeader(n);
+      for (int i = 0; i < n; i++) {
+        Rect r = g.randomRect(64, WIDTH / 2, 64, HEIGHT / 2);
+        g.rectHeader(r, RFB.ENCODING_ZRLE);
+        g.zrleRect(r, z);
+      }
+    }
+    return g.finish();
+  }
+
+  public static Corpus hextile(int bpp, long seed) {
+    Generator g = new Generator(bpp, seed);
+    for (int u = 0; u < UPDATES; u++) {
+      int n = 1 + g.rnd.nextInt(4);
+      g.updateHeader(n);
+      for (int i = 0; i < n; i++) {
+        Rect r = g.randomRect(16, WIDTH / 2, 16, HEIGHT / 2);
+        g.rectHeader(r, RFB.ENCODING_HEXTILE);
+        g.hextileRect(r);
+      }
+    }
+    return g.finish();
+  }
+
+  static byte[] pad(byte[] data) {
+    return Arrays.copyOf(data, data.length + 64);
+  }
+
+  private static final class Generator {
+
+    Generator(int bpp, long seed) {
+      pf = pixelFormat(bpp);
+      rnd = new Random(seed);
+      // Tight sends 32-bit 888 pixels as 24-bit RGB, and ZRLE sends them as
+      // 24-bit CPIXELs.
+      cut = pf.is888();
+      bytesPerPixel = pf.bpp / 8;
+    }
+
+    Corpus finish() {
+      return new Corpus(WIDTH, HEIGHT, pf, pad(out.toByteArray()),
+                        out.size());
+    }
+
+    // The "desktop" that the rectangles are cut from: smooth gradients with
+    // a bit of noise, similar to photographic or 3D content
+    int red(int x, int y) { return (x * 255 / WIDTH + noise()) & 0xff; }
+    int green(int x, int y) { return (y * 255 / HEIGHT + noise()) & 0xff; }
+    int blue(int x, int y) {
+      return ((x + y) * 255 / (WIDTH + HEIGHT) + noise()) & 0xff;
+    }
+    int noise() { return rnd.nextInt(4); }
+
+    int randomPixel() {
+      return pf.pixelFromRGB(rnd.nextInt(256), rnd.nextInt(256),
+                             rnd.nextInt(256), null);
+    }
+
+    Rect randomRect(int minW, int maxW, int minH, int maxH) {
+      int w = minW + rnd.nextInt(maxW - minW + 1);
+      int h = minH + rnd.nextInt(maxH - minH + 1);
+      int x = rnd.nextInt(WIDTH - w + 1), y = rnd.nextInt(HEIGHT - h + 1);
+      return new Rect(x, y, x + w, y + h);
+    }
+
+    void updateHeader(int nRects) {
+      out.write(RFB.FRAMEBUFFER_UPDATE);
+      out.write(0);
+      u16(nRects);
+    }
+
+    void rectHeader(Rect r, int encoding) {
+      u16(r.tl.x);  u16(r.tl.y);  u16(r.width());  u16(r.height());
+      u32(encoding);
+    }
+
+    void u16(int v) { out.write(v >> 8);  out.write(v); }
+
+    void u32(int v) { u16(v >>> 16);  u16(v); }
+
+    void compactLength(int len) {
+      out.write(len & 0x7f | (len > 0x7f ? 0x80 : 0));
+      if (len > 0x7f) {
+        out.write((len >> 7) & 0x7f | (len > 0x3fff ? 0x80 : 0));
+        if (len > 0x3fff)
+          out.write(len >> 14);
+      }
+    }
+
+    // Write a pixel in the pixel format, as Hextile and the Tight palette
+    // and fill subencodings (when the pixel format isn't 888) send it.
+    static void pixel(ByteArrayOutputStream o, int pix, int bytesPerPixel) {
+      for (int i = 0; i < bytesPerPixel; i++)
+        o.write(pix >> (i * 8));
+    }
+
+    // Write a Tight TPIXEL or ZRLE CPIXEL.
+    void compactPixel(ByteArrayOutputStream o, int pix) {
+      if (cut) {
+        if (tight) {
+          o.write(pix >> pf.redShift);
+          o.write(pix >> pf.greenShift);
+          o.write(pix >> pf.blueShift);
+        } else {
+          pixel(o, pix, 3);
+        }
+      } else {
+        pixel(o, pix, bytesPerPixel);
+      }
+    }
+
+    void tightRect(Rect r, String kind, Deflater[] zs) {
+      int w = r.width(), h = r.height();
+      tight = true;
+
+      if (kind.equals(FILL)) {
+        out.write(RFB.TIGHT_FILL << 4);
+        compactPixel(out, randomPixel());
+        return;
+      }
+
+      if (kind.equals(JPEG)) {
+        byte[] jpeg = jpeg(r);
+        out.write(RFB.TIGHT_JPEG << 4);
+        compactLength(jpeg.length);
+        out.write(jpeg, 0, jpeg.length);
+        return;
+      }
+
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      int streamId, filter;
+      if (kind.equals(MONO) || kind.equals(PALETTE)) {
+        // Text-like content: a few colors, mostly the background color,
+        // with glyph-sized runs of the others
+        int palSize = kind.equals(MONO) ? 2 : 4 + rnd.nextInt(29);
+        streamId = kind.equals(MONO) ? 1 : 2;
+        filter = RFB.TIGHT_FILTER_PALETTE;
+        ByteArrayOutputStream pal = new ByteArrayOutputStream();
+        pal.write(palSize - 1);
+        for (int i = 0; i < palSize; i++)
+          compactPixel(pal, randomPixel());
+        for (int y = 0; y < h; y++) {
+          boolean textRow = (y % 16) < 12;
+          int bits = 0, nBits = 0;
+          for (int x = 0; x < w; x++) {
+            int index = 0;
+            if (textRow && rnd.nextInt(5) == 0)
+              index = 1 + rnd.nextInt(palSize - 1);
+            if (palSize == 2) {
+              bits = bits << 1 | index;
+              if (++nBits == 8) {
+                payload.write(bits);
+                bits = nBits = 0;
+              }
+            } else {
+              payload.write(index);
+            }
+          }
+          if (nBits > 0)
+            payload.write(bits << (8 - nBits));
+        }
+        out.write((streamId | RFB.TIGHT_EXPLICIT_FILTER) << 4);
+        out.write(filter);
+        byte[] p = pal.toByteArray();
+        out.write(p, 0, p.length);
+      } else if (kind.equals(GRADIENT)) {
+        streamId = 3;
+        filter = RFB.TIGHT_FILTER_GRADIENT;
+        gradient(r, payload);
+        out.write((streamId | RFB.TIGHT_EXPLICIT_FILTER) << 4);
+        out.write(filter);
+      } else {
+        streamId = 0;
+        for (int y = r.tl.y; y < r.br.y; y++)
+          for (int x = r.tl.x; x < r.br.x; x++)
+            compactPixel(payload, pf.pixelFromRGB(red(x, y), green(x, y),
+                                                  blue(x, y), null));
+        out.write(streamId << 4);
+      }
+
+      byte[] data = payload.toByteArray();
+      if (data.length < TightDecoder.TIGHT_MIN_TO_COMPRESS) {
+        out.write(data, 0, data.length);
+        return;
+      }
+      byte[] compressed = deflate(zs[streamId], data);
+      compactLength(compressed.length);
+      out.write(compressed, 0, compressed.length);
+    }
+
+    // Apply the Tight gradient filter to the desktop image.
+    void gradient(Rect r, ByteArrayOutputStream o) {
+      int w = r.width();
+      int[] max = { pf.redMax, pf.greenMax, pf.blueMax };
+      int[] shift = { pf.redShift, pf.greenShift, pf.blueShift };
+      int[] prevRow = new int[w * 3], thisRow = new int[w * 3];
+      for (int y = r.tl.y; y < r.br.y; y++) {
+        for (int x = 0; x < w; x++) {
+          int pix = pf.pixelFromRGB(red(r.tl.x + x, y), green(r.tl.x + x, y),
+                                    blue(r.tl.x + x, y), null);
+          int residual = 0;
+          for (int c = 0; c < 3; c++) {
+            int value = (pix >> shift[c]) & max[c];
+            int est = prevRow[x * 3 + c];
+            if (x > 0)
+              est = TightKernel.clamp(est + thisRow[x * 3 - 3 + c] -
+                                      prevRow[x * 3 - 3 + c], max[c]);
+            thisRow[x * 3 + c] = value;
+            residual |= ((value - est) & max[c]) << shift[c];
+          }
+          compactPixel(o, residual);
+        }
+        int[] tmp = prevRow;  prevRow = thisRow;  thisRow = tmp;
+      }
+    }
+
+    byte[] jpeg(Rect r) {
+      BufferedImage image =
+        new BufferedImage(r.width(), r.height(), BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < r.height(); y++)
+        for (int x = 0; x < r.width(); x++)
+          image.setRGB(x, y, red(r.tl.x + x, r.tl.y + y) << 16 |
+                             green(r.tl.x + x, r.tl.y + y) << 8 |
+                             blue(r.tl.x + x, r.tl.y + y));
+      ByteArrayOutputStream o = new ByteArrayOutputStream();
+      ImageWriter writer =
+        ImageIO.getImageWritersByFormatName("jpeg").next();
+      try {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.8f);
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(o);
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), param);
+        ios.close();
+      } catch (IOException e) {
+        throw new SystemException(e);
+      } finally {
+        writer.dispose();
+      }
+      return o.toByteArray();
+    }
+
+    void zrleRect(Rect r, Deflater z) {
+      ByteArrayOutputStream t = new ByteArrayOutputStream();
+      tight = false;
+      for (int ty = r.tl.y; ty < r.br.y; ty += 64) {
+        for (int tx = r.tl.x; tx < r.br.x; tx += 64) {
+          int tw = Math.min(64, r.br.x - tx), th = Math.min(64, r.br.y - ty);
+          int area = tw * th;
+          switch (rnd.nextInt(5)) {
+            case 0:  // Raw
+              t.write(0);
+              for (int y = ty; y < ty + th; y++)
+                for (int x = tx; x < tx + tw; x++)
+                  compactPixel(t, pf.pixelFromRGB(red(x, y), green(x, y),
+                                                  blue(x, y), null));
+              break;
+            case 1:  // Solid
+              t.write(1);
+              compactPixel(t, randomPixel());
+              break;
+            case 2: {  // Packed palette
+              int palSize = 2 + rnd.nextInt(15);
+              int bppp = palSize > 4 ? 4 : (palSize > 2 ? 2 : 1);
+              t.write(palSize);
+              for (int i = 0; i < palSize; i++)
+                compactPixel(t, randomPixel());
+              for (int y = 0; y < th; y++) {
+                int bits = 0, nBits = 0;
+                for (int x = 0; x < tw; x++) {
+                  bits = bits << bppp | (rnd.nextInt(4) == 0 ?
+                                         rnd.nextInt(palSize) : 0);
+                  if ((nBits += bppp) == 8) {
+                    t.write(bits);
+                    bits = nBits = 0;
+                  }
+                }
+                if (nBits > 0)
+                  t.write(bits << (8 - nBits));
+              }
+              break;
+            }
+            case 3: {  // Plain RLE
+              t.write(128);
+              for (int left = area; left > 0;) {
+                int len = Math.min(left, 1 + rnd.nextInt(200));
+                compactPixel(t, randomPixel());
+                runLength(t, len);
+                left -= len;
+              }
+              break;
+            }
+            default: {  // Palette RLE
+              int palSize = 2 + rnd.nextInt(126);
+              t.write(128 | palSize);
+              for (int i = 0; i < palSize; i++)
+                compactPixel(t, randomPixel());
+              for (int left = area; left > 0;) {
+                int len = Math.min(left, 1 + rnd.nextInt(40));
+                int index = rnd.nextInt(palSize);
+                if (len == 1) {
+                  t.write(index);
+                } else {
+                  t.write(index | 128);
+                  runLength(t, len);
+                }
+                left -= len;
+              }
+            }
+          }
+        }
+      }
+      byte[] compressed = deflate(z, t.toByteArray());
+      u32(compressed.length);
+      out.write(compressed, 0, compressed.length);
+    }
+
+    static void runLength(ByteArrayOutputStream o, int len) {
+      for (len--; len >= 255; len -= 255)
+        o.write(255);
+      o.write(len);
+    }
+
+    void hextileRect(Rect r) {
+      for (int ty = r.tl.y; ty < r.br.y; ty += 16) {
+        for (int tx = r.tl.x; tx < r.br.x; tx += 16) {
+          int tw = Math.min(16, r.br.x - tx), th = Math.min(16, r.br.y - ty);
+          int type = rnd.nextInt(4);
+          if (type == 0) {
+            out.write(RFB.HEXTILE_RAW);
+            for (int y = ty; y < ty + th; y++)
+              for (int x = tx; x < tx + tw; x++)
+                pixel(out, pf.pixelFromRGB(red(x, y), green(x, y),
+                                           blue(x, y), null),
+                      bytesPerPixel);
+            continue;
+          }
+          boolean coloured = type == 3;
+          int nSubrects = type == 1 ? 0 : 1 + rnd.nextInt(24);
+          int flags = RFB.HEXTILE_BACKGROUND_SPECIFIED;
+          if (nSubrects > 0)
+            flags |= RFB.HEXTILE_ANY_SUBRECTS |
+                     (coloured ? RFB.HEXTILE_SUBRECTS_COLOURED :
+                                 RFB.HEXTILE_FOREGROUND_SPECIFIED);
+          out.write(flags);
+          pixel(out, randomPixel(), bytesPerPixel);
+          if (nSubrects == 0)
+            continue;
+          if (!coloured)
+            pixel(out, randomPixel(), bytesPerPixel);
+          out.write(nSubrects);
+          for (int i = 0; i < nSubrects; i++) {
+            if (coloured)
+              pixel(out, randomPixel(), bytesPerPixel);
+            int x = rnd.nextInt(tw), y = rnd.nextInt(th);
+            int w = 1 + rnd.nextInt(tw - x), h = 1 + rnd.nextInt(th - y);
+            out.write(x << 4 | y);
+            out.write((w - 1) << 4 | (h - 1));
+          }
+        }
+      }
+    }
+
+    static byte[] deflate(Deflater z, byte[] data) {
+      ByteArrayOutputStream o = new ByteArrayOutputStream();
+      byte[] buf = new byte[data.length + 1024];
+      z.setInput(data);
+      int n;
+      do {
+        n = z.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+        o.write(buf, 0, n);
+      } while (n == buf.length);
+      return o.toByteArray();
+    }
+
+    final PixelFormat pf;
+    final Random rnd;
+    final boolean cut;
+    final int bytesPerPixel;
+    boolean tight;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  }
+}
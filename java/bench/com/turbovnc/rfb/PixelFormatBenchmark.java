@@ -0,0 +1,67 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- PixelFormatBenchmark - converts a 256x256 block of 24-bit RGB pixels
+// into a framebuffer, as is done with JPEG images that TurboJPEG can't
+// decompress directly into the framebuffer.
+
+package com.turbovnc.rfb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PixelFormatBenchmark {
+
+  static final int SIZE = 256;
+  // Write into the middle of a wider framebuffer, so the stride differs from
+  // the width.
+  static final int STRIDE = 1024;
+
+  @Param({ "8", "16", "32" })
+  public int bpp;
+
+  PixelFormat pf;
+  byte[] rgb;
+  Object fb;
+
+  @Setup
+  public void setup() {
+    pf = Corpus.pixelFormat(bpp);
+    rgb = new byte[SIZE * SIZE * 3];
+    new Random(Corpus.SEED).nextBytes(rgb);
+    switch (bpp) {
+      case 8:   fb = new byte[STRIDE * SIZE];  break;
+      case 16:  fb = new short[STRIDE * SIZE];  break;
+      default:  fb = new int[STRIDE * SIZE];
+    }
+  }
+
+  @Benchmark
+  public Object bufferFromRGB() {
+    pf.bufferFromRGB(fb, SIZE, 0, STRIDE, rgb, SIZE, SIZE);
+    return fb;
+  }
+}
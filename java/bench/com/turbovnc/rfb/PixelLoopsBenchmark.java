@@ -0,0 +1,103 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- PixelLoopsBenchmark - compares the scalar and Vector API
+// implementations of the pixel loops that convert 24-bit RGB pixels and
+// expand 1-bit and 8-bit palette indices into 32-bit pixels.  Each operation
+// converts a 256x256 block of pixels, one row at a time.  The width parameter
+// is the width of the block in pixels, which affects how many pixels per row
+// the Vector API implementations must convert using scalar code.
+//
+// The Vector API implementations are stored under META-INF/versions/17 in
+// VncViewer.jar, so this benchmark requires Java 17 or later.
+
+package com.turbovnc.rfb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "--add-modules=jdk.incubator.vector" })
+@State(Scope.Thread)
+public class PixelLoopsBenchmark {
+
+  static final int PIXELS = 256 * 256;
+
+  @Param({ "scalar", "vector" })
+  public String impl;
+
+  @Param({ "16", "64", "256" })
+  public int width;
+
+  PixelLoops loops;
+  int height;
+  byte[] src;
+  int[] palette;
+  int[] fb;
+
+  @Setup
+  public void setup() {
+    if (impl.equals("vector")) {
+      loops = PixelLoops.createVector();
+      if (loops == null)
+        throw new IllegalStateException("Vector API is not available");
+    } else
+      loops = new PixelLoops();
+    height = PIXELS / width;
+    Random random = new Random(Corpus.SEED);
+    src = new byte[PIXELS * 3];
+    random.nextBytes(src);
+    palette = new int[256];
+    for (int i = 0; i < 256; i++)
+      palette[i] = random.nextInt();
+    fb = new int[PIXELS];
+  }
+
+  // RGB24 to 32-bit RGBX, as with Tight truecolor and JPEG rectangles
+  @Benchmark
+  public Object unpackRGB() {
+    for (int y = 0, srcPtr = 0, ptr = 0; y < height;
+         y++, srcPtr += width * 3, ptr += width)
+      loops.unpackRGB(src, srcPtr, fb, ptr, width, 0, 8, 16, 0);
+    return fb;
+  }
+
+  // 1-bit mask expansion, as with Tight 2-color palette rectangles
+  @Benchmark
+  public Object expandMono() {
+    int srcStride = (width + 7) >> 3;
+    for (int y = 0, srcPtr = 0, ptr = 0; y < height;
+         y++, srcPtr += srcStride, ptr += width)
+      loops.expandMono(src, srcPtr, fb, ptr, width, palette[0], palette[1]);
+    return fb;
+  }
+
+  // 8-bit index lookup, as with Tight palette rectangles
+  @Benchmark
+  public Object lookup() {
+    for (int y = 0, srcPtr = 0, ptr = 0; y < height;
+         y++, srcPtr += width, ptr += width)
+      loops.lookup(src, srcPtr, fb, ptr, width, palette);
+    return fb;
+  }
+}
@@ -0,0 +1,73 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- SessionReplayBenchmark - decodes whole sessions, which exercises the
+// interaction between rectangles of different types (for instance, the
+// Tight pipeline barriers caused by CopyRect rectangles.)
+//
+// By default, this replays synthetic Tight, ZRLE, and Hextile sessions.  To
+// replay session captures instead, pass their file names to JMH, e.g.:
+//
+//   -p corpus=/path/to/capture1.rfb,/path/to/capture2.rfb -p bpp=32
+//
+// The pixel format of a session capture is fixed, so bpp is ignored for
+// session captures.
+
+package com.turbovnc.rfb;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SessionReplayBenchmark {
+
+  @Param({ Corpus.TIGHT, Corpus.ZRLE, Corpus.HEXTILE })
+  public String corpus;
+
+  @Param({ "8", "16", "32" })
+  public int bpp;
+
+  // Value of the turbovnc.decodethreads system property
+  @Param({ "0" })
+  public int decodeThreads;
+
+  BenchHandler handler;
+
+  @Setup
+  public void setup() throws IOException {
+    handler = TightDecoderBenchmark.open(Corpus.get(corpus, bpp),
+                                         decodeThreads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    handler.close();
+  }
+
+  @Benchmark
+  public Object replay() {
+    return handler.replay();
+  }
+}
@@ -0,0 +1,107 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- TightDecoderBenchmark - decodes synthetic Tight corpora in which every
+// rectangle uses the same subencoding.
+//
+// The Tight protocol allows gradient-filtered and JPEG rectangles only with
+// pixel formats of more than 8 bits per pixel, so those subencodings are
+// measured separately.  The JPEG benchmark uses TurboJPEG if it is
+// available and ImageIO otherwise.
+
+package com.turbovnc.rfb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TightDecoderBenchmark {
+
+  @State(Scope.Thread)
+  public static class AnyFormat {
+    @Param({ Corpus.FILL, Corpus.MONO, Corpus.PALETTE, Corpus.COPY })
+    public String kind;
+
+    @Param({ "8", "16", "32" })
+    public int bpp;
+
+    // Value of the turbovnc.decodethreads system property
+    @Param({ "0" })
+    public int decodeThreads;
+
+    BenchHandler handler;
+
+    @Setup
+    public void setup() {
+      handler = open(Corpus.tight(kind, bpp, Corpus.SEED), decodeThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+      handler.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class TrueColor {
+    @Param({ Corpus.GRADIENT, Corpus.JPEG })
+    public String kind;
+
+    @Param({ "16", "32" })
+    public int bpp;
+
+    @Param({ "0" })
+    public int decodeThreads;
+
+    BenchHandler handler;
+
+    @Setup
+    public void setup() {
+      handler = open(Corpus.tight(kind, bpp, Corpus.SEED), decodeThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+      handler.close();
+    }
+  }
+
+  static BenchHandler open(Corpus corpus, int decodeThreads) {
+    System.setProperty("turbovnc.decodethreads",
+                       Integer.toString(decodeThreads));
+    BenchHandler handler = new BenchHandler(corpus);
+    // Create the decoder and grow its buffers before measuring.
+    handler.replay();
+    return handler;
+  }
+
+  @Benchmark
+  public Object anyFormat(AnyFormat state) {
+    return state.handler.replay();
+  }
+
+  @Benchmark
+  public Object trueColor(TrueColor state) {
+    return state.handler.replay();
+  }
+}
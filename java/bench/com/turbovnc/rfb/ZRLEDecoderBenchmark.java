@@ -0,0 +1,63 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- ZRLEDecoderBenchmark - decodes a synthetic ZRLE corpus containing all
+// five tile subencodings.
+
+package com.turbovnc.rfb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.turbovnc.rdr.ZlibInflater;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ZRLEDecoderBenchmark {
+
+  @Param({ "8", "16", "32" })
+  public int bpp;
+
+  // Value of the turbovnc.zlib system property
+  @Param({ ZlibInflater.NATIVE, ZlibInflater.JZLIB })
+  public String zlib;
+
+  BenchHandler handler;
+
+  @Setup
+  public void setup() {
+    System.setProperty("turbovnc.zlib", zlib);
+    handler = new BenchHandler(Corpus.zrle(bpp, Corpus.SEED));
+    handler.replay();
+  }
+
+  @TearDown
+  public void tearDown() {
+    handler.close();
+  }
+
+  @Benchmark
+  public Object decode() {
+    return handler.replay();
+  }
+}
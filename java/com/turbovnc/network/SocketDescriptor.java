@@ -31,9 +31,13 @@ import com.turbovnc.rfb.Utils;
 public class SocketDescriptor implements FileDescriptor {
 
   public SocketDescriptor() {
-    defaultSelectorProvider();
+    this(openChannel());
+  }
+
+  // Create a descriptor for an existing channel, which may be connected
+  public SocketDescriptor(SocketChannel channel_) {
     try {
-      channel = SocketChannel.open();
+      channel = channel_;
       channel.configureBlocking(false);
       writeSelector = Selector.open();
       readSelector = Selector.open();
@@ -50,8 +54,8 @@ public class SocketDescriptor implements FileDescriptor {
 
   public void shutdown() {
     try {
-      channel.socket().shutdownInput();
-      channel.socket().shutdownOutput();
+      channel.shutdownInput();
+      channel.shutdownOutput();
     } catch (IOException e) {
       throw new SystemException(e);
     }
@@ -65,6 +69,15 @@ public class SocketDescriptor implements FileDescriptor {
     }
   }
 
+  private static SocketChannel openChannel() {
+    defaultSelectorProvider();
+    try {
+      return SocketChannel.open();
+    } catch (IOException e) {
+      throw new SystemException(e);
+    }
+  }
+
   private static SelectorProvider defaultSelectorProvider() {
     // kqueue() selector provider on OS X is not working, fall back to select()
     // for now
@@ -74,84 +87,153 @@ public class SocketDescriptor implements FileDescriptor {
     return SelectorProvider.provider();
   }
 
-  public synchronized int read(byte[] buf, int bufPtr, int length) {
-    int n;
-    ByteBuffer b = ByteBuffer.allocate(length);
-    try {
-      n = channel.read(b);
-    } catch (IOException e) {
-      throw new WarningException("Read error: " + e.getMessage());
+  // The byte array methods read from and write to the channel using a
+  // long-lived direct buffer for each direction, rather than allocating a new
+  // heap buffer for each call.  (Reading from or writing to a heap buffer
+  // causes the channel to copy the data to or from a temporary direct buffer
+  // anyway.)  If the length is greater than the buffer size, then only part of
+  // the data is read or written, which the callers already handle.
+  //
+  // Reads and writes are synchronized separately, so a thread that is blocked
+  // reading from a blocking channel does not prevent another thread from
+  // writing.
+
+  static final int BUF_SIZE = 131072;
+
+  public int read(byte[] buf, int bufPtr, int length) {
+    synchronized (readLock) {
+      int n;
+      if (readBuf == null)
+        readBuf = ByteBuffer.allocateDirect(BUF_SIZE);
+      ((Buffer)readBuf).clear();
+      ((Buffer)readBuf).limit(Math.min(length, BUF_SIZE));
+      try {
+        n = channel.read(readBuf);
+      } catch (IOException e) {
+        throw new WarningException("Read error: " + e.getMessage());
+      }
+      if (n <= 0)
+        return (n == 0) ? -1 : 0;
+      ((Buffer)readBuf).flip();
+      readBuf.get(buf, bufPtr, n);
+      bytesCopied += n;
+      return n;
     }
-    if (n <= 0)
-      return (n == 0) ? -1 : 0;
-    ((Buffer)b).flip();
-    b.get(buf, bufPtr, n);
-    ((Buffer)b).clear();
-    return n;
+  }
 
+  public int write(byte[] buf, int bufPtr, int length) {
+    synchronized (writeLock) {
+      int n;
+      if (writeBuf == null)
+        writeBuf = ByteBuffer.allocateDirect(BUF_SIZE);
+      ((Buffer)writeBuf).clear();
+      writeBuf.put(buf, bufPtr, Math.min(length, BUF_SIZE));
+      ((Buffer)writeBuf).flip();
+      try {
+        n = channel.write(writeBuf);
+      } catch (IOException e) {
+        throw new ErrorException("Write error: " + e.getMessage());
+      }
+      return n;
+    }
   }
 
-  public synchronized int write(byte[] buf, int bufPtr, int length) {
-    int n;
-    ByteBuffer b = ByteBuffer.allocate(length);
-    b.put(buf, bufPtr, length);
-    ((Buffer)b).flip();
-    try {
-      n = channel.write(b);
-    } catch (IOException e) {
-      throw new ErrorException("Write error: " + e.getMessage());
+  // The number of received bytes that have been copied from the read buffer
+  // into a byte array.  This is only updated by the thread that reads from the
+  // descriptor, so it is not synchronized (which would block the caller while
+  // another thread is blocked reading from a blocking channel.)
+  public long getBytesCopied() { return bytesCopied; }
+  public void resetBytesCopied() { bytesCopied = 0; }
+
+  // Switch the channel to blocking mode.  In blocking mode, select() returns
+  // immediately, and read() and write() block until at least one byte has
+  // been read or until all of the data has been written, respectively.  Thus,
+  // a thread that reads from the channel waits for incoming data in the
+  // kernel, without first polling a selector.  Timeouts are not supported in
+  // blocking mode, and this cannot be undone.
+  public void setBlocking() {
+    synchronized (readLock) {
+      synchronized (writeLock) {
+        if (blocking)
+          return;
+        try {
+          // Closing the selectors deregisters the channel, which is a
+          // prerequisite for making it blocking.
+          synchronized (readSelector) {
+            readSelector.close();
+          }
+          synchronized (writeSelector) {
+            writeSelector.close();
+          }
+          channel.configureBlocking(true);
+        } catch (IOException e) {
+          throw new SystemException(e);
+        }
+        blocking = true;
+      }
     }
-    ((Buffer)b).clear();
-    return n;
   }
 
-  public synchronized int select(int interestOps, Integer timeout) {
+  public boolean isBlocking() { return blocking; }
+
+  // NOTE: This locks the selector rather than the descriptor, so a thread
+  // that is blocked waiting for incoming data does not prevent another thread
+  // from writing.
+  public int select(int interestOps, Integer timeout) {
     int n;
     Selector selector;
+    if (blocking)
+      return 1;
     if ((interestOps & SelectionKey.OP_READ) != 0) {
       selector = readSelector;
     } else {
       selector = writeSelector;
     }
-    selector.selectedKeys().clear();
-    try {
-      if (timeout == null) {
-        n = selector.select();
-      } else {
-        int tv = timeout.intValue();
-        switch (tv) {
-          case 0:
-            n = selector.selectNow();
-            break;
-          default:
-            n = selector.select((long)tv);
-            break;
+    synchronized (selector) {
+      selector.selectedKeys().clear();
+      try {
+        if (timeout == null) {
+          n = selector.select();
+        } else {
+          int tv = timeout.intValue();
+          switch (tv) {
+            case 0:
+              n = selector.selectNow();
+              break;
+            default:
+              n = selector.select((long)tv);
+              break;
+          }
         }
+      } catch (IOException e) {
+        throw new SystemException(e);
       }
-    } catch (IOException e) {
-      throw new SystemException(e);
     }
     return n;
   }
 
   public int write(ByteBuffer buf) {
-    int n = 0;
-    try {
-      n = channel.write(buf);
-    } catch (IOException e) {
-      throw new ErrorException("Write error: " + e.getMessage());
+    synchronized (writeLock) {
+      int n = 0;
+      try {
+        n = channel.write(buf);
+      } catch (IOException e) {
+        throw new ErrorException("Write error: " + e.getMessage());
+      }
+      return n;
     }
-    return n;
   }
 
   public long write(ByteBuffer[] buf, int offset, int length) {
-    long n = 0;
-    try {
-      n = channel.write(buf, offset, length);
-    } catch (IOException e) {
-      throw new ErrorException("Write error: " + e.getMessage());
+    synchronized (writeLock) {
+      long n = 0;
+      try {
+        n = channel.write(buf, offset, length);
+      } catch (IOException e) {
+        throw new ErrorException("Write error: " + e.getMessage());
+      }
+      return n;
     }
-    return n;
   }
 
   public int read(ByteBuffer buf) {
@@ -224,6 +306,7 @@ public class SocketDescriptor implements FileDescriptor {
         writeSelector.close();
       channel = channel_;
       channel.configureBlocking(false);
+      blocking = false;
       writeSelector = Selector.open();
       readSelector = Selector.open();
     } catch (IOException e) {
@@ -240,4 +323,8 @@ public class SocketDescriptor implements FileDescriptor {
   protected SocketChannel channel;
   protected Selector writeSelector;
   protected Selector readSelector;
+  private final Object readLock = new Object(), writeLock = new Object();
+  private ByteBuffer readBuf, writeBuf;
+  private volatile long bytesCopied;
+  private volatile boolean blocking;
 }
@@ -0,0 +1,150 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- UnixSocket - a connection to a local Unix domain socket
+//
+// Unix domain socket channels are available in Java 16 and later.  Since the
+// viewer must also run with older JVMs, the channel is created using
+// reflection.  If isSupported() returns false, then the caller must use
+// another method of connecting to the Unix domain socket.
+
+package com.turbovnc.network;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+import com.turbovnc.rdr.*;
+import com.turbovnc.rfb.LogWriter;
+import com.turbovnc.rfb.Utils;
+
+public class UnixSocket extends Socket {
+
+  public static boolean isSupported() {
+    return openMethod != null;
+  }
+
+  public UnixSocket(String path_) {
+    if (!isSupported())
+      throw new ErrorException("Unix domain socket channels are not supported");
+    path = path_;
+
+    SocketChannel channel = null;
+    try {
+      SocketAddress address = (SocketAddress)ofMethod.invoke(null, path);
+      channel = (SocketChannel)openMethod.invoke(null, unixFamily);
+      channel.connect(address);
+    } catch (InvocationTargetException e) {
+      closeChannel(channel);
+      throw new WarningException("Could not connect to Unix domain socket " +
+                                 path + ":\n" + e.getCause().getMessage());
+    } catch (IOException e) {
+      closeChannel(channel);
+      throw new WarningException("Could not connect to Unix domain socket " +
+                                 path + ":\n" + e.getMessage());
+    } catch (Exception e) {
+      closeChannel(channel);
+      throw new SystemException(e);
+    }
+
+    descriptor = new SocketDescriptor(channel);
+    instream = new FdInStream(descriptor);
+    outstream = new FdOutStream(descriptor);
+    ownStreams = true;
+  }
+
+  private static void closeChannel(SocketChannel channel) {
+    if (channel == null)
+      return;
+    try {
+      channel.close();
+    } catch (IOException e) {}
+  }
+
+  public int getMyPort() {
+    return -1;
+  }
+
+  public String getPeerAddress() {
+    return "";
+  }
+
+  public String getPeerName() {
+    return "";
+  }
+
+  public int getPeerPort() {
+    return -1;
+  }
+
+  public String getPeerEndpoint() {
+    return path;
+  }
+
+  public boolean sameMachine() {
+    return true;
+  }
+
+  public void shutdown() {
+    super.shutdown();
+    descriptor.shutdown();
+  }
+
+  public void close() {
+    descriptor.close();
+  }
+
+  public boolean isConnected() {
+    return descriptor.isConnected();
+  }
+
+  public int getSockPort() {
+    return -1;
+  }
+
+  private final String path;
+  private final SocketDescriptor descriptor;
+
+  // SocketChannel.open(ProtocolFamily), UnixDomainSocketAddress.of(String),
+  // and StandardProtocolFamily.UNIX, or null if they are not available
+  private static Method openMethod, ofMethod;
+  private static ProtocolFamily unixFamily;
+
+  static LogWriter vlog = new LogWriter("UnixSocket");
+
+  static {
+    if (Utils.JAVA_VERSION >= 16) {
+      try {
+        Class<?> addressClass =
+          Class.forName("java.net.UnixDomainSocketAddress");
+        ofMethod = addressClass.getMethod("of", String.class);
+        unixFamily = StandardProtocolFamily.valueOf("UNIX");
+        openMethod = SocketChannel.class.getMethod("open",
+                                                   ProtocolFamily.class);
+      } catch (Exception e) {
+        vlog.debug("Unix domain socket channels are not available: " +
+                   e.toString());
+        openMethod = null;
+      }
+    }
+  }
+}
@@ -27,6 +27,9 @@ public class FdInStream extends InStream {
 
   static final int DEFAULT_BUF_SIZE = 131072;
   static final int MIN_BULK_SIZE = 1024;
+  // How often (in milliseconds) the block callback is called while waiting
+  // for the receive thread
+  static final int BLOCK_CALLBACK_INTERVAL = 100;
 
   static final double getTime() {
     return (double)System.nanoTime() / 1.0e9;
@@ -47,6 +50,23 @@ public class FdInStream extends InStream {
   public double getBytesRead() { return bytesRead; }
   public void resetBytesRead() { bytesRead = 0; }
 
+  // The number of bytes that have been copied between buffers before becoming
+  // available to the caller, including copies made by the socket layer (if
+  // the file descriptor is a socket) and the receive thread.  Dividing this
+  // by getBytesRead() gives the number of copies per byte received.
+  public long getBytesCopied() {
+    long n = bytesCopied;
+    if (fd instanceof SocketDescriptor)
+      n += ((SocketDescriptor)fd).getBytesCopied();
+    return n;
+  }
+
+  public void resetBytesCopied() {
+    bytesCopied = 0;
+    if (fd instanceof SocketDescriptor)
+      ((SocketDescriptor)fd).resetBytesCopied();
+  }
+
   public FdInStream(FileDescriptor fd_) { this(fd_, -1, 0, false); }
 
   public FdInStream(FileDescriptor fd_, FdInStreamBlockCallback blockCallback_,
@@ -131,8 +151,10 @@ public class FdInStream extends InStream {
 
     double tReadStart = getTime();
 
-    if (end - ptr != 0)
+    if (end - ptr != 0) {
       System.arraycopy(b, ptr, b, 0, end - ptr);
+      bytesCopied += end - ptr;
+    }
 
     offset += ptr;
     end -= ptr;
@@ -174,32 +196,57 @@ public class FdInStream extends InStream {
       before = System.nanoTime();
 
     int n;
-    while (true) {
-      do {
-        Integer tv;
-
+    if (receiver != null) {
+      // The receive thread does the blocking and wakes this thread as soon as
+      // data arrives, so the block callback is called only after each
+      // BLOCK_CALLBACK_INTERVAL milliseconds that pass with no data.
+      while (true) {
+        int tv;
         if (!wait) {
-          tv = Integer.valueOf(0);
-        } else if (timeoutms != -1) {
-          tv = Integer.valueOf(timeoutms);
+          tv = 0;
+        } else if (blockCallback != null) {
+          tv = BLOCK_CALLBACK_INTERVAL;
         } else {
-          tv = null;
+          tv = timeoutms;
         }
 
-        n = fd.select(SelectionKey.OP_READ, tv);
-      } while (n < 0);
+        n = receiver.read(buf, bufPtr, len, tv);
 
+        if (n > 0) break;
+        if (!wait) return 0;
+        if (blockCallback == null) throw new TimedOut();
 
-      if (n > 0) break;
-      if (!wait) return 0;
-      if (blockCallback == null) throw new TimedOut();
+        blockCallback.blockCallback();
+      }
+      bytesCopied += n;
+    } else {
+      while (true) {
+        do {
+          Integer tv;
 
-      blockCallback.blockCallback();
-    }
+          if (!wait) {
+            tv = Integer.valueOf(0);
+          } else if (timeoutms != -1) {
+            tv = Integer.valueOf(timeoutms);
+          } else {
+            tv = null;
+          }
+
+          n = fd.select(SelectionKey.OP_READ, tv);
+        } while (n < 0);
 
-    n = fd.read(buf, bufPtr, len);
 
-    if (n == 0) throw new EndOfStream();
+        if (n > 0) break;
+        if (!wait) return 0;
+        if (blockCallback == null) throw new TimedOut();
+
+        blockCallback.blockCallback();
+      }
+
+      n = fd.read(buf, bufPtr, len);
+
+      if (n == 0) throw new EndOfStream();
+    }
 
     if (timing) {
       long after = System.nanoTime();
@@ -225,6 +272,28 @@ public class FdInStream extends InStream {
     return readWithTimeoutOrCallback(buf, bufPtr, len, true);
   }
 
+  // Start a thread that reads from the file descriptor into a ring buffer of
+  // the specified size (or the default size, if ringSize <= 0) as fast as the
+  // network allows.  Subsequent reads are satisfied from the ring buffer, so
+  // receiving can overlap with whatever the caller does with the data.  Once
+  // started, the receive thread runs until the connection is closed.
+  public void startReceiveThread(int ringSize) {
+    startReceiveThread(ringSize, false);
+  }
+
+  // If blockingChannel is true and the file descriptor is a socket, then the
+  // socket is also switched to blocking mode, so the receive thread waits for
+  // incoming data in a blocking read rather than polling a selector before
+  // each read.  Socket timeouts are not supported in that case.
+  public void startReceiveThread(int ringSize, boolean blockingChannel) {
+    if (receiver != null)
+      return;
+    if (blockingChannel && fd instanceof SocketDescriptor)
+      ((SocketDescriptor)fd).setBlocking();
+    receiver = new ReceiveThread(fd, ringSize);
+    receiver.start();
+  }
+
   public FileDescriptor getFd() {
     return fd;
   }
@@ -241,6 +310,7 @@ public class FdInStream extends InStream {
   boolean closeWhenDone;
   protected int timeoutms;
   private FdInStreamBlockCallback blockCallback;
+  private ReceiveThread receiver;
   private int offset;
   private int bufSize;
 
@@ -250,4 +320,5 @@ public class FdInStream extends InStream {
 
   double tRead;
   long bytesRead;
+  long bytesCopied;
 }
@@ -22,6 +22,7 @@
 package com.turbovnc.rdr;
 
 import com.turbovnc.network.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 
 public class FdOutStream extends OutStream {
@@ -89,6 +90,37 @@ public class FdOutStream extends OutStream {
       ptr = sentUpTo = start;
   }
 
+  // If the file descriptor is a socket, then large blocks of data are written
+  // directly from the caller's array, along with any data in the buffer,
+  // using a gather write.  This avoids copying the data into the buffer and
+  // flushing the buffer multiple times.
+
+  public void writeBytes(byte[] data, int dataPtr, int length) {
+    if (length < MIN_BULK_SIZE || !blocking ||
+        !(fd instanceof SocketDescriptor)) {
+      super.writeBytes(data, dataPtr, length);
+      return;
+    }
+
+    SocketDescriptor sock = (SocketDescriptor)fd;
+    ByteBuffer[] bufs = {
+      ByteBuffer.wrap(b, sentUpTo, ptr - sentUpTo),
+      ByteBuffer.wrap(data, dataPtr, length)
+    };
+    while (bufs[1].hasRemaining()) {
+      int n;
+      do {
+        n = sock.select(SelectionKey.OP_WRITE,
+                        timeoutms != -1 ? Integer.valueOf(timeoutms) : null);
+      } while (n < 0);
+      if (n == 0)
+        throw new TimedOut();
+
+      offset += (int)sock.write(bufs, 0, 2);
+    }
+    sentUpTo = ptr = start;
+  }
+
   private int writeWithTimeout(byte[] data, int dataPtr, int length,
                                int timeoutms_) {
     int n;
@@ -147,7 +147,8 @@ public abstract class InStream {
   }
 
   public final int readPixel(int bytesPerPixel, boolean bigEndian) {
-    byte[] pix = new byte[4];
+    byte[] pix = pixelBuf;
+    pix[0] = pix[1] = pix[2] = pix[3] = 0;
     readBytes(pix, 0, bytesPerPixel);
 
     if (bigEndian) {
@@ -167,13 +168,45 @@ public abstract class InStream {
   public final void readPixels(Object buf, int length, int bytesPerPixel,
                                boolean bigEndian, boolean opaque) {
     int nbytes = length * bytesPerPixel;
-    int dstPtr = 0, srcPtr = 0;
-    byte[] pixels = new byte[nbytes];
+    byte[] pixels = getScratch(nbytes);
 
     readBytes(pixels, 0, nbytes);
+    convertPixels(pixels, buf, 0, length, bytesPerPixel, bigEndian, opaque);
+  }
+
+  public final void readPixels(Object buf, int stride, Rect r,
+                               int bytesPerPixel, boolean bigEndian) {
+    int w = r.width(), h = r.height();
+    int rowBytes = w * bytesPerPixel;
+    int dstPtr = r.tl.y * stride + r.tl.x;
+    byte[] pixels = getScratch(rowBytes);
+
+    if (!(bytesPerPixel == 1 && buf instanceof byte[]) &&
+        !(bytesPerPixel == 2 && buf instanceof short[]) &&
+        !(bytesPerPixel >= 3 && buf instanceof int[])) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel format");
+    }
+
+    // Convert one row at a time, so that the scratch buffer stays small.
+    while (h > 0) {
+      readBytes(pixels, 0, rowBytes);
+      convertPixels(pixels, buf, dstPtr, w, bytesPerPixel, bigEndian, true);
+      dstPtr += stride;
+      h--;
+    }
+  }
+
+  // Convert length pixels from wire format in src into buf, starting at
+  // dstPtr.  4-byte pixels are treated as opaque (alpha forced to 0xff) if
+  // opaque is true.
+  private static void convertPixels(byte[] pixels, Object buf, int dstPtr,
+                                    int length, int bytesPerPixel,
+                                    boolean bigEndian, boolean opaque) {
+    int srcPtr = 0;
 
     if (bytesPerPixel == 1 && buf instanceof byte[]) {
-      System.arraycopy(pixels, 0, (byte[])buf, 0, length);
+      System.arraycopy(pixels, 0, (byte[])buf, dstPtr, length);
     } else if (bytesPerPixel == 2 && buf instanceof short[]) {
       if (bigEndian) {
         while (length-- > 0) {
@@ -234,127 +267,28 @@ public abstract class InStream {
       }
     } else {
       assert buf instanceof int[];
-      if (bigEndian) {
-        while (length-- > 0) {
-          byte[] pix = new byte[4];
-          System.arraycopy(pixels, srcPtr, pix, 0, bytesPerPixel);
-          ((int[])buf)[dstPtr++] = (pix[0] & 0xff) << 24 |
-                                   (pix[1] & 0xff) << 16 |
-                                   (pix[2] & 0xff) << 8 |
-                                   0x000000ff;
-          srcPtr += bytesPerPixel;
-        }
-      } else {
-        while (length-- > 0) {
-          byte[] pix = new byte[4];
-          System.arraycopy(pixels, srcPtr, pix, 0, bytesPerPixel);
-          ((int[])buf)[dstPtr++] = (pix[0] & 0xff) |
-                                   (pix[1] & 0xff) << 8 |
-                                   (pix[2] & 0xff) << 16 |
-                                   0xff000000;
-          srcPtr += bytesPerPixel;
-        }
+      // 1- or 2-byte pixels unpacked into an int array.  Bytes beyond
+      // bytesPerPixel are treated as 0.
+      while (length-- > 0) {
+        int p0 = pixels[srcPtr] & 0xff;
+        int p1 = (bytesPerPixel > 1 ? pixels[srcPtr + 1] & 0xff : 0);
+        int p2 = (bytesPerPixel > 2 ? pixels[srcPtr + 2] & 0xff : 0);
+        if (bigEndian)
+          ((int[])buf)[dstPtr++] = p0 << 24 | p1 << 16 | p2 << 8 | 0x000000ff;
+        else
+          ((int[])buf)[dstPtr++] = p0 | p1 << 8 | p2 << 16 | 0xff000000;
+        srcPtr += bytesPerPixel;
       }
     }
   }
 
-
-  public final void readPixels(Object buf, int stride, Rect r,
-                               int bytesPerPixel, boolean bigEndian) {
-    int w = r.width(), h = r.height();
-    int nbytes = w * h * bytesPerPixel;
-    int dstPtr = r.tl.y * stride + r.tl.x, srcPtr = 0;
-    byte[] pixels = new byte[nbytes];
-    int pad = stride - w;
-
-    readBytes(pixels, 0, nbytes);
-
-    if (bytesPerPixel == 1 && buf instanceof byte[]) {
-      while (h > 0) {
-        System.arraycopy(pixels, srcPtr, (byte[])buf, dstPtr, w);
-        dstPtr += stride;
-        srcPtr += w;
-        h--;
-      }
-    } else if (bytesPerPixel == 2 && buf instanceof short[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow) {
-            ((short[])buf)[dstPtr] = (short)((pixels[srcPtr++] & 0xff) << 8);
-            ((short[])buf)[dstPtr++] |= (short)(pixels[srcPtr++] & 0xff);
-          }
-          dstPtr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow) {
-            ((short[])buf)[dstPtr] = (short)(pixels[srcPtr++] & 0xff);
-            ((short[])buf)[dstPtr++] |=
-              (short)((pixels[srcPtr++] & 0xff) << 8);
-          }
-          dstPtr += pad;
-          h--;
-        }
-      }
-    } else if (bytesPerPixel == 3 && buf instanceof int[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow)
-            ((int[])buf)[dstPtr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                     (pixels[srcPtr++] & 0xff) << 16 |
-                                     (pixels[srcPtr++] & 0xff) << 8 |
-                                     0x000000ff;
-          dstPtr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow)
-            ((int[])buf)[dstPtr++] = (pixels[srcPtr++] & 0xff) |
-                                     (pixels[srcPtr++] & 0xff) << 8 |
-                                     (pixels[srcPtr++] & 0xff) << 16 |
-                                     0xff000000;
-          dstPtr += pad;
-          h--;
-        }
-      }
-    } else if (bytesPerPixel == 4 && buf instanceof int[]) {
-      if (bigEndian) {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow) {
-            ((int[])buf)[dstPtr++] = (pixels[srcPtr++] & 0xff) << 24 |
-                                     (pixels[srcPtr++] & 0xff) << 16 |
-                                     (pixels[srcPtr++] & 0xff) << 8 |
-                                     0x000000ff;
-            srcPtr++;
-          }
-          dstPtr += pad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int endOfRow = dstPtr + w;
-          while (dstPtr < endOfRow) {
-            ((int[])buf)[dstPtr++] = (pixels[srcPtr++] & 0xff) |
-                                     (pixels[srcPtr++] & 0xff) << 8 |
-                                     (pixels[srcPtr++] & 0xff) << 16 |
-                                     0xff000000;
-            srcPtr++;
-          }
-          dstPtr += pad;
-          h--;
-        }
-      }
-    } else {
-      // We should never get here
-      throw new ErrorException("Unsupported pixel format");
-    }
+  // Return a scratch buffer of at least size bytes.  The buffer is reused
+  // across calls, so that reading pixels doesn't allocate memory once the
+  // buffer has grown to the size of the largest row or palette.
+  private byte[] getScratch(int size) {
+    if (scratch == null || scratch.length < size)
+      scratch = new byte[Math.max(size, 256)];
+    return scratch;
   }
 
   public final int readCompactLength() {
@@ -398,6 +332,8 @@ public abstract class InStream {
   protected abstract int overrun(int itemSize, int nItems, boolean wait);
 
   protected InStream() {}
+  private final byte[] pixelBuf = new byte[4];
+  private byte[] scratch;
   protected byte[] b;
   protected int ptr;
   protected int end;
@@ -0,0 +1,127 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- ReceiveThread - drains a FileDescriptor into a ring buffer on a
+// dedicated thread, so that data can continue to arrive from the network
+// while the consumer of the FdInStream is busy decoding.
+
+package com.turbovnc.rdr;
+
+import com.turbovnc.network.*;
+import java.nio.channels.SelectionKey;
+
+class ReceiveThread extends Thread {
+
+  static final int DEFAULT_RING_SIZE = 4194304;
+
+  ReceiveThread(FileDescriptor fd_, int ringSize) {
+    super("ReceiveThread");
+    fd = fd_;
+    ring = new byte[ringSize > 0 ? ringSize : DEFAULT_RING_SIZE];
+    setDaemon(true);
+  }
+
+  public void run() {
+    try {
+      while (true) {
+        int tail, len;
+
+        synchronized (this) {
+          // Wait until there is space in the ring
+          while (count == ring.length) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              throw new SystemException(e);
+            }
+          }
+          tail = (head + count) % ring.length;
+          len = (tail < head) ? head - tail : ring.length - tail;
+        }
+
+        int n;
+        do {
+          n = fd.select(SelectionKey.OP_READ, null);
+        } while (n <= 0);
+
+        // The region [tail, tail + len) is owned by this thread until count
+        // is updated below, so the read can happen outside of the lock.
+        n = fd.read(ring, tail, len);
+        if (n == 0) throw new EndOfStream();
+        if (n < 0) continue;
+
+        synchronized (this) {
+          count += n;
+          notifyAll();
+        }
+      }
+    } catch (Exception e) {
+      synchronized (this) {
+        error = e;
+        notifyAll();
+      }
+    }
+  }
+
+  // Copy up to len bytes from the ring into buf.  timeoutms has the same
+  // meaning as for FileDescriptor.select(): < 0 waits indefinitely, 0 returns
+  // immediately, and > 0 waits for at most that many milliseconds.  Returns 0
+  // if no data arrived within the timeout.  An exception that occurred on the
+  // receive thread is rethrown once all data received before it has been
+  // consumed.
+  synchronized int read(byte[] buf, int bufPtr, int len, int timeoutms) {
+    long deadline = 0;
+    if (timeoutms > 0)
+      deadline = System.currentTimeMillis() + timeoutms;
+
+    while (count == 0) {
+      if (error != null) {
+        if (error instanceof RuntimeException)
+          throw (RuntimeException)error;
+        throw new SystemException(error);
+      }
+      if (timeoutms == 0)
+        return 0;
+      try {
+        if (timeoutms < 0) {
+          wait();
+        } else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0)
+            return 0;
+          wait(remaining);
+        }
+      } catch (InterruptedException e) {
+        throw new SystemException(e);
+      }
+    }
+
+    int n = Math.min(len, Math.min(count, ring.length - head));
+    System.arraycopy(ring, head, buf, bufPtr, n);
+    head = (head + n) % ring.length;
+    count -= n;
+    notifyAll();
+    return n;
+  }
+
+  private final FileDescriptor fd;
+  private final byte[] ring;
+  private int head;
+  private int count;
+  private Exception error;
+}
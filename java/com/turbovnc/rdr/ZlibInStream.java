@@ -24,8 +24,6 @@
 
 package com.turbovnc.rdr;
 
-import com.jcraft.jsch.jzlib.*;
-
 public class ZlibInStream extends InStream {
 
   static final int DEFAULT_BUF_SIZE = 16384;
@@ -34,14 +32,7 @@ public class ZlibInStream extends InStream {
     bufSize = bufSize_;
     b = new byte[bufSize];
     bytesIn = offset = 0;
-    zs = new ZStream();
-    zs.next_in = null;
-    zs.next_in_index = 0;
-    zs.avail_in = 0;
-    if (zs.inflateInit() != JZlib.Z_OK) {
-      zs = null;
-      throw new ErrorException("ZlibInStream: inflateInit failed");
-    }
+    inflater = ZlibInflater.create();
     ptr = end = start = 0;
   }
 
@@ -49,7 +40,7 @@ public class ZlibInStream extends InStream {
 
   public void close() {
     b = null;
-    zs.inflateEnd();
+    inflater.end();
   }
 
   public void setUnderlying(InStream is, int bytesIn_) {
@@ -73,6 +64,15 @@ public class ZlibInStream extends InStream {
     underlying = null;
   }
 
+  // Discard any buffered data, and start a new zlib stream.  Unlike creating
+  // a new ZlibInStream, this reuses the existing buffers.
+  public void restart() {
+    ptr = end = start;
+    underlying = null;
+    bytesIn = offset = 0;
+    inflater.reset();
+  }
+
   protected int overrun(int itemSize, int nItems, boolean wait) {
     if (itemSize > bufSize)
       throw new ErrorException("ZlibInStream overrun: max itemSize exceeded");
@@ -103,36 +103,29 @@ public class ZlibInStream extends InStream {
   // stream.
 
   private boolean decompress(boolean wait) {
-    if (zs.inflateFinished())
+    if (inflater.finished())
       throw new ErrorException("ZlibInStream: unexpected end of zlib stream");
 
-    zs.next_out = b;
-    zs.next_out_index = end;
-    zs.avail_out = start + bufSize - end;
-
     int n = underlying.check(1, 1, wait);
     if (n == 0) return false;
-    zs.next_in = underlying.getbuf();
-    zs.next_in_index = underlying.getptr();
-    zs.avail_in = underlying.getend() - underlying.getptr();
-    if (zs.avail_in > bytesIn)
-      zs.avail_in = bytesIn;
-
-    int rc = zs.inflate(JZlib.Z_SYNC_FLUSH);
-    if (rc != JZlib.Z_OK && rc != JZlib.Z_STREAM_END) {
-      throw new ErrorException("ZlibInStream: inflate failed");
-    }
+    int inPtr = underlying.getptr();
+    int availIn = underlying.getend() - inPtr;
+    if (availIn > bytesIn)
+      availIn = bytesIn;
+
+    inflater.setInput(underlying.getbuf(), inPtr, availIn);
+    end += inflater.inflate(b, end, start + bufSize - end);
 
-    bytesIn -= zs.next_in_index - underlying.getptr();
-    end = zs.next_out_index;
-    underlying.setptr(zs.next_in_index);
+    int consumed = availIn - inflater.getRemaining();
+    bytesIn -= consumed;
+    underlying.setptr(inPtr + consumed);
     return true;
   }
 
   private InStream underlying;
   private int bufSize;
   private int offset;
-  private com.jcraft.jsch.jzlib.ZStream zs;
+  private ZlibInflater inflater;
   private int bytesIn;
   private int start;
 }
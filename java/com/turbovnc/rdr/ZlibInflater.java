@@ -0,0 +1,170 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- ZlibInflater - a zlib decompressor with interchangeable backends.
+//
+// The default backend uses java.util.zip.Inflater, which calls into the zlib
+// library that ships with the JRE.  The pure-Java JZlib implementation from
+// JSch can be selected instead by setting the turbovnc.zlib system property
+// to "jzlib".
+
+package com.turbovnc.rdr;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.jcraft.jsch.jzlib.JZlib;
+import com.jcraft.jsch.jzlib.ZStream;
+import com.turbovnc.rfb.LogWriter;
+
+public abstract class ZlibInflater {
+
+  public static final String NATIVE = "native";
+  public static final String JZLIB = "jzlib";
+
+  // Return the name of the backend specified by the turbovnc.zlib system
+  // property.
+  public static String getDefaultBackend() {
+    String backend = System.getProperty("turbovnc.zlib");
+    if (backend != null && backend.equalsIgnoreCase(JZLIB))
+      return JZLIB;
+    if (backend != null && !backend.equalsIgnoreCase(NATIVE) && !warned) {
+      vlog.error("Unknown zlib backend '" + backend + "'.  Using " + NATIVE +
+                 ".");
+      warned = true;
+    }
+    return NATIVE;
+  }
+
+  public static ZlibInflater create() {
+    return create(getDefaultBackend());
+  }
+
+  public static ZlibInflater create(String backend) {
+    if (backend.equalsIgnoreCase(JZLIB))
+      return new JZlibInflater();
+    return new NativeInflater();
+  }
+
+  public abstract String getName();
+
+  // Supply up to len bytes of compressed data, starting at buf[ptr].  Any
+  // data that was not consumed by the previous call to inflate() must be
+  // supplied again.
+  public abstract void setInput(byte[] buf, int ptr, int len);
+
+  // Decompress as much of the input as possible into buf[ptr] through
+  // buf[ptr + len - 1], and return the number of bytes written.
+  public abstract int inflate(byte[] buf, int ptr, int len);
+
+  // Return the number of input bytes that were not consumed by the last call
+  // to inflate().
+  public abstract int getRemaining();
+
+  // Return true if the end of the compressed stream has been reached.
+  public abstract boolean finished();
+
+  // Discard any pending input and output, and start a new compressed stream.
+  public abstract void reset();
+
+  public abstract void end();
+
+  static final class NativeInflater extends ZlibInflater {
+
+    NativeInflater() {
+      inflater = new Inflater();
+    }
+
+    public String getName() { return NATIVE; }
+
+    public void setInput(byte[] buf, int ptr, int len) {
+      inflater.setInput(buf, ptr, len);
+    }
+
+    public int inflate(byte[] buf, int ptr, int len) {
+      try {
+        return inflater.inflate(buf, ptr, len);
+      } catch (DataFormatException e) {
+        throw new ErrorException("ZlibInflater: " + e.getMessage());
+      }
+    }
+
+    public int getRemaining() { return inflater.getRemaining(); }
+
+    public boolean finished() { return inflater.finished(); }
+
+    public void reset() { inflater.reset(); }
+
+    public void end() { inflater.end(); }
+
+    private final Inflater inflater;
+  }
+
+  static final class JZlibInflater extends ZlibInflater {
+
+    JZlibInflater() {
+      zs = new ZStream();
+      zs.next_in = null;
+      zs.next_in_index = 0;
+      zs.avail_in = 0;
+      if (zs.inflateInit() != JZlib.Z_OK)
+        throw new ErrorException("ZlibInflater: inflateInit failed");
+    }
+
+    public String getName() { return JZLIB; }
+
+    public void setInput(byte[] buf, int ptr, int len) {
+      zs.next_in = buf;
+      zs.next_in_index = ptr;
+      zs.avail_in = len;
+    }
+
+    public int inflate(byte[] buf, int ptr, int len) {
+      zs.next_out = buf;
+      zs.next_out_index = ptr;
+      zs.avail_out = len;
+
+      int rc = zs.inflate(JZlib.Z_SYNC_FLUSH);
+      if (rc != JZlib.Z_OK && rc != JZlib.Z_STREAM_END)
+        throw new ErrorException("ZlibInflater: inflate failed");
+
+      return zs.next_out_index - ptr;
+    }
+
+    public int getRemaining() { return zs.avail_in; }
+
+    public boolean finished() { return zs.inflateFinished(); }
+
+    public void reset() {
+      zs.inflateEnd();
+      zs.next_in = null;
+      zs.next_in_index = 0;
+      zs.avail_in = 0;
+      if (zs.inflateInit() != JZlib.Z_OK)
+        throw new ErrorException("ZlibInflater: inflateInit failed");
+    }
+
+    public void end() { zs.inflateEnd(); }
+
+    private final ZStream zs;
+  }
+
+  private static boolean warned;
+
+  static LogWriter vlog = new LogWriter("ZlibInflater");
+}
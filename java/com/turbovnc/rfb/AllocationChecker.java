@@ -0,0 +1,105 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- AllocationChecker - verifies that framebuffer updates don't allocate
+// heap memory
+//
+// In allocation checking mode (turbovnc.checkalloc), we verify that reading,
+// decoding, and publishing a framebuffer update for display did not allocate
+// any heap memory, once the decoders' buffers have had a chance to grow to
+// their steady-state sizes and the JIT compiler has had a chance to compile
+// the decoders.  (Code that is being recompiled can allocate memory once.)
+// Memory allocated by the RFB thread and by the decoders' worker threads (if
+// any) is counted.  A framebuffer update that allocates memory causes end()
+// to throw an ErrorException, so a benchmark run fails with a nonzero exit
+// status.
+//
+// The number of framebuffer updates that are allowed to allocate memory can be
+// specified using the turbovnc.checkallocwarmup system property.  The default
+// is 100.
+
+package com.turbovnc.rfb;
+
+import com.turbovnc.rdr.*;
+
+public final class AllocationChecker {
+
+  static final int DEFAULT_WARMUP = 100;
+
+  // Returns a new allocation checker if allocation checking mode is enabled
+  // and the JVM supports it, or null otherwise.
+  public static AllocationChecker create() {
+    if (!Utils.getBooleanProperty("turbovnc.checkalloc", false))
+      return null;
+    if (Utils.getThreadAllocatedBytes() < 0) {
+      vlog.error("Allocation checking is not supported by this JVM");
+      return null;
+    }
+    return new AllocationChecker();
+  }
+
+  private AllocationChecker() {
+    int w = Utils.getIntProperty("turbovnc.checkallocwarmup");
+    warmup = w >= 0 ? w : DEFAULT_WARMUP;
+  }
+
+  // RFB thread: Call at the start of a framebuffer update.
+  public void start(CMsgReader reader) {
+    Thread[] threads = reader.getWorkerThreads();
+    if (threads != workers || !measured) {
+      // Measure how much the measurement itself allocates, so we can subtract
+      // it later.
+      workers = threads;
+      allocatedBytes();
+      long before = allocatedBytes();
+      overhead = allocatedBytes() - before;
+      measured = true;
+    }
+    startBytes = allocatedBytes();
+  }
+
+  // RFB thread: Call at the end of a framebuffer update, after the update has
+  // been published for display.
+  public void end(CMsgReader reader) {
+    long allocated = allocatedBytes() - startBytes - overhead;
+    updates++;
+    // If the decoders started or stopped worker threads during the update,
+    // then the measurement isn't meaningful.
+    if (reader.getWorkerThreads() != workers)
+      return;
+    if (updates > warmup && allocated > 0)
+      throw new ErrorException("Allocation check failed: framebuffer update " +
+                               updates + " allocated " + allocated + " bytes");
+  }
+
+  private long allocatedBytes() {
+    long bytes = Utils.getThreadAllocatedBytes();
+    if (workers != null) {
+      for (Thread t : workers)
+        bytes += Utils.getThreadAllocatedBytes(t);
+    }
+    return bytes;
+  }
+
+  private final int warmup;
+  private Thread[] workers;
+  private boolean measured;
+  private long startBytes, overhead, updates;
+
+  static LogWriter vlog = new LogWriter("AllocationChecker");
+}
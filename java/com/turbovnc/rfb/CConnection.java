@@ -340,6 +340,15 @@ public abstract class CConnection extends CMsgHandler {
     vlog.debug("initialisation done");
   }
 
+  // The pixel format of an established connection must be changed using
+  // setPixelFormat() rather than cp.setPF(), so that the decoders can select
+  // the pixel loops for the new format.
+  public void setPixelFormat(PixelFormat pf) {
+    super.setPixelFormat(pf);
+    if (reader != null)
+      reader.setPF(pf);
+  }
+
   // getCSecurity() gets the CSecurity object for the given type.  The type
   // is guaranteed to be one of the secTypes passed in to addSecType().  The
   // CSecurity object's destroy() method will be called by the CConnection
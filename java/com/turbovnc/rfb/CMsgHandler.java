@@ -140,6 +140,13 @@ public abstract class CMsgHandler {
   public abstract Object getRawPixelsRW(int[] stride);
   public abstract void releaseRawPixels(Rect r);
 
+  // Returns the denominator (1, 2, 4, or 8) of the scaling factor at which
+  // JPEG images can be decompressed.  If it is greater than 1, then the
+  // framebuffer is being displayed at that scaling factor or smaller, so
+  // decoders may decompress JPEG images at reduced size and enlarge them
+  // into the framebuffer by pixel replication.
+  public int getJPEGScalingDenom() { return 1; }
+
   public abstract PixelFormat getPreferredPF();
   public abstract CSecurity getCurrentCSecurity();
 
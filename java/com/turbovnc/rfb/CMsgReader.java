@@ -319,6 +319,11 @@ public class CMsgReader {
       int h = is.readU16();
       int encoding = is.readS32();
 
+      // Anything other than another Tight rectangle is a barrier for
+      // decoders that decode asynchronously.
+      if (encoding != RFB.ENCODING_TIGHT)
+        flush();
+
       switch (encoding) {
         case RFB.ENCODING_NEW_FB_SIZE:
           handler.setDesktopSize(w, h);
@@ -351,12 +356,16 @@ public class CMsgReader {
           handler.enableExtMouseButtons();
           break;
         default:
-          readRect(new Rect(x, y, x + w, y + h), encoding);
+          rect.setXYWH(x, y, w, h);
+          readRect(rect, encoding);
           break;
       }
 
       nUpdateRectsLeft--;
-      if (nUpdateRectsLeft == 0) handler.framebufferUpdateEnd();
+      if (nUpdateRectsLeft == 0) {
+        flush();
+        handler.framebufferUpdateEnd();
+      }
     }
   }
 
@@ -390,6 +399,7 @@ public class CMsgReader {
           vlog.error("Unknown rect encoding " + encoding);
           throw new ErrorException("Unknown rect encoding" + encoding);
         }
+        decoders[encoding].setPF(handler.cp.pf());
       }
       handler.startDecodeTimer();
       decoders[encoding].readRect(r, handler);
@@ -552,6 +562,30 @@ public class CMsgReader {
     handler.setLEDState(state);
   }
 
+  // Wait for any asynchronous decoders to finish, and commit their results.
+  public final void flush() {
+    Decoder d = decoders[RFB.ENCODING_TIGHT];
+    if (d != null) {
+      handler.startDecodeTimer();
+      d.flush();
+      handler.stopDecodeTimer();
+    }
+  }
+
+  // Returns the threads on which the decoders decode rectangles
+  // asynchronously, or null if there are none.
+  public final Thread[] getWorkerThreads() {
+    Decoder d = decoders[RFB.ENCODING_TIGHT];
+    return d != null ? d.getWorkerThreads() : null;
+  }
+
+  public final void setPF(PixelFormat pf) {
+    for (int i = 0; i < RFB.ENCODING_MAX; i++) {
+      if (decoders[i] != null)
+        decoders[i].setPF(pf);
+    }
+  }
+
   public final void reset() {
     for (int i = 0; i < RFB.ENCODING_MAX; i++) {
       if (decoders[i] != null)
@@ -563,6 +597,9 @@ public class CMsgReader {
 
   private CMsgHandler handler;
   private InStream is;
+  // Reused for every rectangle, so decoders and handlers must not hold on to
+  // it after readRect() returns.
+  private final Rect rect = new Rect();
   private Decoder[] decoders;
   private int[] imageBuf;
   private int imageBufSize;
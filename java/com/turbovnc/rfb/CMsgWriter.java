@@ -34,8 +34,40 @@ public class CMsgWriter {
     cp = cp_;  os = os_;
   }
 
+  // Messages written during a batch are flushed if the oldest unflushed
+  // message was written more than this many nanoseconds ago.
+  static final long BATCH_DEADLINE = 2000000;
+
   private synchronized void endMsg() {
+    if (batchLevel > 0) {
+      long now = System.nanoTime();
+      if (!batchUnflushed) {
+        batchUnflushed = true;
+        batchStart = now;
+        return;
+      }
+      if (now - batchStart < BATCH_DEADLINE)
+        return;
+    }
     os.flush();
+    batchUnflushed = false;
+  }
+
+  // Messages that are written between startBatch() and endBatch() accumulate
+  // in the output stream's buffer and are flushed together by endBatch() (or
+  // earlier, if the batch takes longer than BATCH_DEADLINE), so that they can
+  // be sent in a single network write.  Batches can be nested.  The caller
+  // should synchronize on the writer for the duration of the batch, so that
+  // messages written by other threads are not delayed.
+  public synchronized void startBatch() {
+    batchLevel++;
+  }
+
+  public synchronized void endBatch() {
+    if (batchLevel > 0 && --batchLevel == 0 && batchUnflushed) {
+      os.flush();
+      batchUnflushed = false;
+    }
   }
 
   private synchronized void startMsg(int type) {
@@ -501,6 +533,9 @@ public class CMsgWriter {
 
   private ConnParams cp;
   private OutStream os;
+  private int batchLevel;
+  private boolean batchUnflushed;
+  private long batchStart;
 
   static LogWriter vlog = new LogWriter("CMsgWriter");
 }
@@ -25,6 +25,20 @@ public abstract class Decoder {
 
   public void reset() {}
 
+  // Called when the decoder is created and whenever the pixel format
+  // changes, so decoders can select format-specific code paths up front
+  // rather than for every rectangle.
+  public void setPF(PixelFormat pf) {}
+
+  // Decoders that defer work to other threads must finish and commit all
+  // outstanding rectangles before returning from flush().
+  public void flush() {}
+
+  // Returns the threads on which the decoder decodes rectangles
+  // asynchronously, or null if it decodes them only on the calling thread.
+  // The array must not be modified.
+  public Thread[] getWorkerThreads() { return null; }
+
   public void close() {}
 
   public static boolean supported(int encoding) {
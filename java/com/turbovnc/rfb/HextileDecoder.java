@@ -32,7 +32,7 @@ public class HextileDecoder extends Decoder {
 
     int[] buf = reader.getImageBuf(16 * 16 * 4);
 
-    Rect t = new Rect();
+    Rect t = tile;
     int bg = 0;
     int fg = 0;
 
@@ -92,4 +92,5 @@ public class HextileDecoder extends Decoder {
   }
 
   CMsgReader reader;
+  private final Rect tile = new Rect();
 }
@@ -0,0 +1,139 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- ImageIOJPEGDecoder - a pure-Java JPEG decoder for Tight rectangles,
+// used when TurboJPEG is not available.
+//
+// Each instance owns an ImageIO JPEG reader, an input stream that reads
+// directly from the compressed data of the current rectangle, and an RGB
+// destination image that only ever grows.  Thus, decoding a rectangle
+// doesn't create any Image objects, and the decoded pixels are converted
+// straight into the framebuffer.  Instances are not thread-safe, so
+// TightDecoder creates one per decode context.
+
+package com.turbovnc.rfb;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import com.turbovnc.rdr.*;
+
+final class ImageIOJPEGDecoder {
+
+  // Return true if the JRE has an ImageIO JPEG reader.
+  static boolean isAvailable() {
+    return ImageIO.getImageReadersByFormatName("jpeg").hasNext();
+  }
+
+  ImageIOJPEGDecoder() {
+    Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+    if (!readers.hasNext())
+      throw new ErrorException("No ImageIO JPEG reader is available");
+    reader = readers.next();
+    param = reader.getDefaultReadParam();
+    source = new Source();
+  }
+
+  // Decompress the w x h JPEG image in data[0] through data[len - 1] and
+  // write it into buf, starting at index ptr.
+  void decode(byte[] data, int len, TightKernel kernel, Object buf, int ptr,
+              int stride, int w, int h) {
+    checkDest(w, h);
+    source.setData(data, len);
+    try {
+      reader.setInput(source, true, true);
+      reader.read(0, param);
+    } catch (IOException e) {
+      throw new ErrorException("JPEG decompression failed: " +
+                               e.getMessage());
+    } finally {
+      reader.setInput(null);
+    }
+    kernel.copyRGB(destBuf, 0, destWidth * 3, buf, ptr, stride, w, h);
+  }
+
+  void dispose() {
+    reader.dispose();
+  }
+
+  // (Re)create the destination image if it is too small for a w x h image.
+  // The JPEG reader writes into the upper left corner of the image.
+  private void checkDest(int w, int h) {
+    if (destBuf != null && w <= destWidth && h <= destHeight)
+      return;
+    destWidth = Math.max(w, destWidth);
+    destHeight = Math.max(h, destHeight);
+    destBuf = new byte[destWidth * destHeight * 3];
+    WritableRaster raster = Raster.createInterleavedRaster(
+      new DataBufferByte(destBuf, destBuf.length), destWidth, destHeight,
+      destWidth * 3, 3, new int[] { 0, 1, 2 }, null);
+    ColorModel cm =
+      new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                              false, false, ColorModel.OPAQUE,
+                              DataBuffer.TYPE_BYTE);
+    param.setDestination(new BufferedImage(cm, raster, false, null));
+  }
+
+  // An ImageInputStream that reads from a byte array, which can be replaced
+  // without creating a new stream
+  private static final class Source extends ImageInputStreamImpl {
+
+    void setData(byte[] data_, int len_) {
+      data = data_;
+      len = len_;
+      streamPos = 0;
+      flushedPos = 0;
+      bitOffset = 0;
+    }
+
+    public int read() {
+      bitOffset = 0;
+      if (streamPos >= len)
+        return -1;
+      return data[(int)streamPos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int n) {
+      bitOffset = 0;
+      if (n == 0)
+        return 0;
+      int avail = len - (int)streamPos;
+      if (avail <= 0)
+        return -1;
+      n = Math.min(n, avail);
+      System.arraycopy(data, (int)streamPos, b, off, n);
+      streamPos += n;
+      return n;
+    }
+
+    public long length() { return len; }
+
+    private byte[] data;
+    private int len;
+  }
+
+  private final ImageReader reader;
+  private final ImageReadParam param;
+  private final Source source;
+  private byte[] destBuf;
+  private int destWidth, destHeight;
+}
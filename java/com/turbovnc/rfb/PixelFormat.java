@@ -204,28 +204,11 @@ public class PixelFormat {
         bshift = 24 - blueShift;
       }
 
-      int dstPad = stride - w;
-      if (alpha) {
-        while (h > 0) {
-          int dstEndOfRow = dstPtr + w;
-          while (dstPtr < dstEndOfRow)
-            dst[dstPtr++] = ((src[srcPtr++] & 0xff) << rshift) |
-                            ((src[srcPtr++] & 0xff) << gshift) |
-                            ((src[srcPtr++] & 0xff) << bshift) | (0xff << 24);
-          dstPtr += dstPad;
-          h--;
-        }
-      } else {
-        while (h > 0) {
-          int dstEndOfRow = dstPtr + w;
-          while (dstPtr < dstEndOfRow)
-            dst[dstPtr++] = ((src[srcPtr++] & 0xff) << rshift) |
-                            ((src[srcPtr++] & 0xff) << gshift) |
-                            ((src[srcPtr++] & 0xff) << bshift);
-          dstPtr += dstPad;
-          h--;
-        }
-      }
+      int alphaMask = alpha ? (0xff << 24) : 0;
+
+      for (; h > 0; h--, dstPtr += stride, srcPtr += w * 3)
+        PixelLoops.INSTANCE.unpackRGB(src, srcPtr, dst, dstPtr, w, rshift,
+                                      gshift, bshift, alphaMask);
     } else {
       // Generic code
       int r, g, b;
@@ -0,0 +1,132 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- PixelLoops - the innermost loops for converting 24-bit RGB pixels and
+// expanding palettes into 32-bit pixels.  Each method converts one row of w
+// pixels.
+//
+// The methods in this class are the scalar implementations.  On Java 17 and
+// later, VncViewer.jar also contains VectorPixelLoops (under
+// META-INF/versions/17), which overrides them with implementations that use
+// the incubating Vector API.  VectorPixelLoops is used only if the JVM was
+// started with --add-modules jdk.incubator.vector, and it can be disabled by
+// setting the turbovnc.vector system property to 0.
+
+package com.turbovnc.rfb;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+class PixelLoops {
+
+  static PixelLoops create() {
+    PixelLoops loops = createVector();
+    return loops != null ? loops : new PixelLoops();
+  }
+
+  // Returns an instance of VectorPixelLoops, or null if the Vector API is not
+  // available or VectorPixelLoops does not support this CPU.
+  static PixelLoops createVector() {
+    if (Utils.JAVA_VERSION < 17 ||
+        !Utils.getBooleanProperty("turbovnc.vector", true))
+      return null;
+    try {
+      // ModuleLayer.boot().findModule("jdk.incubator.vector")
+      Class<?> layerClass = Class.forName("java.lang.ModuleLayer");
+      Object bootLayer = layerClass.getMethod("boot").invoke(null);
+      Method findModule = layerClass.getMethod("findModule", String.class);
+      Optional<?> vectorModule =
+        (Optional<?>)findModule.invoke(bootLayer, "jdk.incubator.vector");
+      if (!vectorModule.isPresent())
+        return null;
+
+      // When the viewer runs as a named module (in the custom JRE), it must
+      // explicitly read the jdk.incubator.vector module.
+      // PixelLoops.class.getModule().addReads(vectorModule.get())
+      Class<?> moduleClass = Class.forName("java.lang.Module");
+      Object module = Class.class.getMethod("getModule")
+                      .invoke(PixelLoops.class);
+      moduleClass.getMethod("addReads", moduleClass)
+        .invoke(module, vectorModule.get());
+
+      Class<?> loopsClass =
+        Class.forName("com.turbovnc.rfb.VectorPixelLoops");
+      PixelLoops loops =
+        (PixelLoops)loopsClass.getDeclaredConstructor().newInstance();
+      vlog.info("Using Vector API (" + loops.toString() + ")");
+      return loops;
+    } catch (Throwable e) {
+      vlog.debug("Vector API is not available: " + e.toString());
+      return null;
+    }
+  }
+
+  // Convert 24-bit RGB pixels, starting at src[srcPtr], into 32-bit pixels
+  // with the specified shifts and alpha mask, starting at dst[dstPtr].
+  void unpackRGB(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+                 int rShift, int gShift, int bShift, int alphaMask) {
+    // Indexing the source with constant offsets from a single index, rather
+    // than using three post-increments, is measurably faster with HotSpot.
+    for (int end = dstPtr + w; dstPtr < end; dstPtr++, srcPtr += 3)
+      dst[dstPtr] = (src[srcPtr] & 0xff) << rShift |
+                    (src[srcPtr + 1] & 0xff) << gShift |
+                    (src[srcPtr + 2] & 0xff) << bShift | alphaMask;
+  }
+
+  // Expand a 1-bit-per-pixel bitmap (MSB first), starting at src[srcPtr],
+  // into p0 and p1 pixels.
+  //
+  // The loop is branch-free.  Shifting the bit for a pixel into the sign bit
+  // and back yields a mask of all 0s or all 1s, which selects either p0 or
+  // p0 ^ (p0 ^ p1) = p1.
+  void expandMono(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+                  int p0, int p1) {
+    int diff = p0 ^ p1;
+    int x = 0, w8 = w & ~7;
+    for (; x < w8; x += 8) {
+      int bits = src[srcPtr++], i = dstPtr + x;
+      dst[i]     = p0 ^ (diff & bits << 24 >> 31);
+      dst[i + 1] = p0 ^ (diff & bits << 25 >> 31);
+      dst[i + 2] = p0 ^ (diff & bits << 26 >> 31);
+      dst[i + 3] = p0 ^ (diff & bits << 27 >> 31);
+      dst[i + 4] = p0 ^ (diff & bits << 28 >> 31);
+      dst[i + 5] = p0 ^ (diff & bits << 29 >> 31);
+      dst[i + 6] = p0 ^ (diff & bits << 30 >> 31);
+      dst[i + 7] = p0 ^ (diff & bits << 31 >> 31);
+    }
+    if (x < w) {
+      int bits = src[srcPtr];
+      for (int mask = 0x80; x < w; x++, mask >>= 1)
+        dst[dstPtr + x] = (bits & mask) != 0 ? p1 : p0;
+    }
+  }
+
+  // Look up 8-bit palette indices, starting at src[srcPtr], in pal.
+  void lookup(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+              int[] pal) {
+    for (int end = dstPtr + w; dstPtr < end; dstPtr++, srcPtr++)
+      dst[dstPtr] = pal[src[srcPtr] & 0xff];
+  }
+
+  public String toString() { return "scalar"; }
+
+  static LogWriter vlog = new LogWriter("PixelLoops");
+
+  // This must be initialized after vlog.
+  static final PixelLoops INSTANCE = create();
+}
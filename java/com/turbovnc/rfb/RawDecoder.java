@@ -24,7 +24,7 @@ public class RawDecoder extends Decoder {
   public RawDecoder(CMsgReader reader_) { reader = reader_; }
 
   public void readRect(Rect r, CMsgHandler handler) {
-    int[] stride = { r.width() };
+    stride[0] = r.width();
     Object buf = handler.getRawPixelsRW(stride);
 
     reader.getInStream().readPixels(buf, stride[0], r, (reader.bpp() / 8),
@@ -33,5 +33,6 @@ public class RawDecoder extends Decoder {
   }
 
   CMsgReader reader;
+  private final int[] stride = new int[1];
   static LogWriter vlog = new LogWriter("RawDecoder");
 }
@@ -24,22 +24,227 @@ package com.turbovnc.rfb;
 
 import com.turbovnc.rdr.*;
 import java.awt.image.*;
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.*;
 import java.awt.*;
 import java.util.zip.*;
 
+/* The Tight decoder is split into two stages.  The parse stage always runs on
+   the RFB thread, and it reads the rectangle header, palette, and compressed
+   payload from the InStream into a Job.  The decode stage inflates the
+   payload or decompresses the JPEG image and writes the pixels into the
+   framebuffer.
+
+   By default, the decode stage runs inline on the RFB thread.  If the
+   turbovnc.decodethreads system property is set to a value > 0, then the
+   decode stage runs on a pool of worker threads instead:
+
+   - one lane per zlib stream ID (0-3).  Each lane is the only thread that
+     touches its Inflater, so the zlib streams are still consumed in protocol
+     order.
+   - {turbovnc.decodethreads} free-running workers that handle JPEG and
+     uncompressed rectangles, each with its own TurboJPEG instance (or
+     ImageIO JPEG reader, if TurboJPEG is not available.)
+
+   Rectangles are committed (passed to CMsgHandler.releaseRawPixels()) on the
+   RFB thread in protocol order.  A rectangle that overlaps a rectangle that
+   is still in flight causes the decoder to drain, and CMsgReader calls
+   flush() before any non-Tight rectangle (including CopyRect) and before
+   framebufferUpdateEnd(), so those act as barriers. */
+
 public class TightDecoder extends Decoder {
 
   static final int TIGHT_MAX_WIDTH = 2048;
   static final int TIGHT_MIN_TO_COMPRESS = 12;
 
+  // Maximum number of rectangles that can be in flight at once
+  static final int MAX_PENDING = 256;
+
+  // zlib-compressed rectangles are inflated and written to the framebuffer in
+  // chunks of (approximately) this many bytes, so the inflated data is still
+  // in the CPU cache when it is expanded into pixels.
+  static final int INFLATE_CHUNK = 16384;
+
   static final Toolkit TK = Toolkit.getDefaultToolkit();
 
   static final int TJPF_RGB = 0;
-  static final int TJPF_RGBX = 2;
-  static final int TJPF_BGRX = 3;
-  static final int TJPF_XBGR = 4;
-  static final int TJPF_XRGB = 5;
+
+  // A parsed Tight rectangle, handed off from the parse stage to the decode
+  // stage
+  static final class Job {
+    static final int FILL = 0;
+    static final int JPEG = 1;
+    static final int BASIC = 2;
+
+    final Rect r = new Rect();
+    int type;
+    TightKernel kernel;
+    Object buf;
+    int stride;
+    int fillPix;
+
+    int streamId = -1;
+    int palSize;
+    boolean useGradient;
+    Object palette;
+
+    byte[] data;
+    int dataLen;
+    int rawSize;
+    // If true, then the compressed data has not been copied into data and
+    // must be inflated directly from the InStream's buffer.
+    boolean inflateFromStream;
+    // log2 of the scaling denominator for JPEG decompression
+    int jpegScaleShift;
+
+    private boolean done;
+    private Throwable error;
+
+    void checkData(int size) {
+      if (data == null || data.length < size)
+        data = new byte[size];
+    }
+
+    synchronized void start() {
+      done = false;
+      error = null;
+    }
+
+    synchronized void finish(Throwable e) {
+      error = e;
+      done = true;
+      notifyAll();
+    }
+
+    synchronized boolean isDone() {
+      return done;
+    }
+
+    // Wait for the decode stage to finish, and rethrow any error that it
+    // encountered on the calling thread.
+    synchronized void await() {
+      while (!done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new SystemException(e);
+        }
+      }
+      if (error instanceof RuntimeException)
+        throw (RuntimeException)error;
+      else if (error != null)
+        throw new SystemException(error);
+    }
+  }
+
+  // Per-thread scratch state for the decode stage.  The buffers only ever
+  // grow, so decoding doesn't allocate memory once they have reached the size
+  // of the largest rectangle.
+  static final class Context {
+    long tjhandle;
+    ImageIOJPEGDecoder jpegDecoder;
+    byte[] decodebuf;
+    byte[] rgbBuf;
+    int[] scaledBuf;
+    int[] prevRow;
+    int[] thisRow;
+    final int[] pix = new int[3];
+    final int[] est = new int[3];
+    final int[] max = new int[3];
+    final int[] shift = new int[3];
+
+    byte[] checkDecodebuf(int size) {
+      if (decodebuf == null || decodebuf.length < size)
+        decodebuf = new byte[size];
+      return decodebuf;
+    }
+
+    int[] checkScaledBuf(int size) {
+      if (scaledBuf == null || scaledBuf.length < size)
+        scaledBuf = new int[size];
+      return scaledBuf;
+    }
+
+    ImageIOJPEGDecoder getJPEGDecoder() {
+      if (jpegDecoder == null)
+        jpegDecoder = new ImageIOJPEGDecoder();
+      return jpegDecoder;
+    }
+
+    void disposeJPEGDecoder() {
+      if (jpegDecoder != null) {
+        jpegDecoder.dispose();
+        jpegDecoder = null;
+      }
+    }
+
+    byte[] checkRGBBuf(int size) {
+      if (rgbBuf == null || rgbBuf.length < size)
+        rgbBuf = new byte[size];
+      return rgbBuf;
+    }
+
+    // Set up the previous/current row buffers for the gradient filter.  The
+    // previous row must start out as all zeroes.
+    void checkGradientRows(int width) {
+      int size = Math.max(width, TIGHT_MAX_WIDTH) * 3;
+      if (prevRow == null || prevRow.length < size) {
+        prevRow = new int[size];
+        thisRow = new int[size];
+      } else {
+        Arrays.fill(prevRow, 0, width * 3, 0);
+      }
+    }
+  }
+
+  static final Job POISON = new Job();
+  static final byte[] NO_INPUT = new byte[0];
+
+  private final class Worker extends Thread {
+    Worker(String name, BlockingQueue<Job> queue_, Inflater inflater_,
+           Context ctx_) {
+      super(name);
+      queue = queue_;
+      workerInflater = inflater_;
+      ctx = ctx_;
+      setDaemon(true);
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          Job job;
+          try {
+            job = queue.take();
+          } catch (InterruptedException e) {
+            return;
+          }
+          if (job == POISON)
+            return;
+          try {
+            decode(job, workerInflater, ctx);
+            job.finish(null);
+          } catch (Throwable e) {
+            job.finish(e);
+          }
+        }
+      } finally {
+        if (workerInflater != null)
+          workerInflater.end();
+        if (ctx.tjhandle != 0) {
+          try {
+            tjDestroy(ctx.tjhandle);
+          } catch (Exception e) {}
+          ctx.tjhandle = 0;
+        }
+        ctx.disposeJPEGDecoder();
+      }
+    }
+
+    private final BlockingQueue<Job> queue;
+    private final Inflater workerInflater;
+    private final Context ctx;
+  }
 
   public TightDecoder(CMsgReader reader_) {
     reader = reader_;
@@ -54,94 +259,200 @@ public class TightDecoder extends Decoder {
         throw new SystemException(e);
       }
     }
+    // Without TurboJPEG, decompress JPEG rectangles into the framebuffer using
+    // ImageIO, rather than creating an Image object for each rectangle.
+    useImageIO = tjhandle == 0 &&
+      Utils.getBooleanProperty("turbovnc.imageiojpeg", true) &&
+      ImageIOJPEGDecoder.isAvailable();
     tightPalette = new byte[256 * 3];
+    serialJob = new Job();
+    serialCtx = new Context();
+    serialCtx.tjhandle = tjhandle;
+
+    int nThreads = Utils.getIntProperty("turbovnc.decodethreads");
+    if (nThreads > 0)
+      startWorkers(nThreads);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private void startWorkers(int nThreads) {
+    laneQueues = new BlockingQueue[4];
+    workers = new Worker[4 + nThreads];
+    for (int i = 0; i < 4; i++) {
+      laneQueues[i] = new ArrayBlockingQueue<Job>(MAX_PENDING + 1);
+      workers[i] = new Worker("TightDecoder zlib lane " + i, laneQueues[i],
+                              inflater[i], new Context());
+    }
+    jpegQueue = new ArrayBlockingQueue<Job>(MAX_PENDING + nThreads);
+    for (int i = 0; i < nThreads; i++) {
+      Context ctx = new Context();
+      if (tjhandle != 0) {
+        try {
+          ctx.tjhandle = tjInitDecompress();
+        } catch (Exception e) {
+          throw new SystemException(e);
+        }
+      }
+      workers[4 + i] = new Worker("TightDecoder worker " + i, jpegQueue,
+                                  null, ctx);
+    }
+    pending = new Job[MAX_PENDING];
+    freeJobs = new ArrayDeque<Job>();
+    for (int i = 0; i < workers.length; i++)
+      workers[i].start();
+    vlog.info("Using " + nThreads + " Tight decode worker thread" +
+              (nThreads > 1 ? "s" : "") + " plus 4 zlib lanes");
   }
 
   public void reset() {
+    if (workers != null)
+      flush();
     for (int i = 0; i < 4; i++) {
       if (inflater[i] != null)
         inflater[i].reset();
     }
   }
 
+  public Thread[] getWorkerThreads() { return workers; }
+
   // NOTE: must be idempotent
   public void close() {
-    for (int i = 0; i < 4; i++) {
-      if (inflater[i] != null)
-        inflater[i].end();
+    if (workers != null) {
+      // The workers release their own Inflaters and JPEG decoders once
+      // they have finished the jobs ahead of the poison pill.
+      for (int i = 0; i < 4; i++)
+        laneQueues[i].add(POISON);
+      for (int i = 4; i < workers.length; i++)
+        jpegQueue.add(POISON);
+      workers = null;
+      Arrays.fill(pending, null);
+      nPending = 0;
+    } else {
+      for (int i = 0; i < 4; i++) {
+        if (inflater[i] != null)
+          inflater[i].end();
+      }
     }
     if (tjhandle != 0) {
       try {
         tjDestroy(tjhandle);
       } catch (Exception e) {}
       tjhandle = 0;
+      serialCtx.tjhandle = 0;
     }
+    serialCtx.disposeJPEGDecoder();
   }
 
   public boolean isTurboJPEG() {
     return tjhandle != 0;
   }
 
-  short getShort(byte[] src, int srcPtr) {
-    return (short)((src[srcPtr++] & 0xff) |
-                   (src[srcPtr] & 0xff) << 8);
+  // Select the pixel loops for a new pixel format.  CMsgReader calls this
+  // whenever the pixel format changes, after all rectangles that use the old
+  // format have been flushed.
+  public void setPF(PixelFormat pf) {
+    kernel = TightKernel.create(pf);
   }
 
-  void checkPalette(int bpp, boolean cutZeros) {
-    if (cutZeros || bpp > 16) {
-      if (palette != null && palette instanceof int[])
-        return;
-      palette = new int[256];
-    } else if (bpp == 8) {
-      if (palette != null && palette instanceof byte[])
-        return;
-      palette = new byte[256];
-    } else if (bpp == 16) {
-      if (palette != null && palette instanceof short[])
-        return;
-      palette = new short[256];
-    } else {
-      // We should never get here
-      throw new ErrorException("Unsupported pixel format");
+  public void readRect(Rect r, CMsgHandler handler_) {
+    handler = handler_;
+    if (workers == null) {
+      if (readJob(r, serialJob)) {
+        Job job = serialJob;
+        decode(job, job.streamId >= 0 ? inflater[job.streamId] : null,
+               serialCtx);
+        handler.releaseRawPixels(r);
+      }
+      return;
     }
+
+    Job job = freeJobs.isEmpty() ? new Job() : freeJobs.poll();
+    if (readJob(r, job))
+      dispatch(job);
+    else
+      freeJobs.add(job);
   }
 
-  void checkNetbuf(int size) {
-    if (netbufSize < size || netbuf == null) {
-      if (netbuf != null)
-        netbuf = null;
-      netbuf = new byte[size];
-      netbufSize = size;
-    }
+  // Wait for all in-flight rectangles to be decoded, and commit them in
+  // protocol order.
+  public void flush() {
+    if (workers == null)
+      return;
+    while (nPending > 0)
+      commitOldest();
+  }
+
+  // The in-flight jobs are kept in a circular array (rather than a
+  // collection) so that dispatching a job doesn't allocate memory.
+  private Job oldestPending() {
+    return pending[pendingHead];
   }
 
-  void checkDecodebuf(int size) {
-    if (decodebufSize < size || decodebuf == null) {
-      if (decodebuf != null)
-        decodebuf = null;
-      decodebuf = new byte[size];
-      decodebufSize = size;
+  private void commitOldest() {
+    Job job = pending[pendingHead];
+    job.await();
+    pending[pendingHead] = null;
+    pendingHead = (pendingHead + 1) % MAX_PENDING;
+    nPending--;
+    handler.releaseRawPixels(job.r);
+    freeJobs.add(job);
+  }
+
+  private void dispatch(Job job) {
+    boolean overlaps = false;
+    for (int i = 0; i < nPending; i++) {
+      if (pending[(pendingHead + i) % MAX_PENDING].r.overlaps(job.r)) {
+        overlaps = true;
+        break;
+      }
+    }
+    if (overlaps)
+      flush();
+    else if (nPending >= MAX_PENDING)
+      commitOldest();
+
+    job.start();
+    pending[(pendingHead + nPending) % MAX_PENDING] = job;
+    nPending++;
+    if (job.type == Job.FILL) {
+      fill(job);
+      job.finish(null);
+    } else if (job.streamId >= 0) {
+      laneQueues[job.streamId].add(job);
+    } else {
+      jpegQueue.add(job);
     }
+
+    // Commit whatever has already been decoded, so the display keeps up with
+    // the decoder.
+    while (nPending > 0 && oldestPending().isDone())
+      commitOldest();
   }
 
+  // Parse stage: read a Tight rectangle from the InStream into a Job.  Returns
+  // false if the rectangle was handled entirely on the RFB thread.
   @SuppressWarnings("fallthrough")
-  public void readRect(Rect r, CMsgHandler handler) {
+  private boolean readJob(Rect r, Job job) {
     InStream is = reader.getInStream();
-    boolean cutZeros = false;
-    serverpf = handler.cp.pf();
-    int bpp = serverpf.bpp;
-    cutZeros = false;
-    if (bpp == 32 && serverpf.is888())
-      cutZeros = true;
+    if (kernel == null)
+      setPF(handler.cp.pf());
 
-    int compCtl = is.readU8();
+    job.r.setXYWH(r.tl.x, r.tl.y, r.width(), r.height());
+    job.kernel = kernel;
+    job.streamId = -1;
+    job.palSize = 0;
+    job.useGradient = false;
+    job.inflateFromStream = false;
 
-    boolean bigEndian = handler.cp.pf().bigEndian;
+    int compCtl = is.readU8();
 
     // Flush zlib streams if we are told by the server to do so.
     for (int i = 0; i < 4; i++) {
-      if ((compCtl & 1) != 0)
-        inflater[i].end();
+      if ((compCtl & 1) != 0) {
+        // The lane that owns the stream must be idle before it can be reset.
+        flush();
+        inflater[i].reset();
+      }
       compCtl >>= 1;
     }
 
@@ -152,60 +463,28 @@ public class TightDecoder extends Decoder {
     }
 
     // "JPEG" compression type.
-    if (compCtl == RFB.TIGHT_JPEG) {
-      decompressJpegRect(r, is, handler);
-      return;
-    }
+    if (compCtl == RFB.TIGHT_JPEG)
+      return readJpegJob(is, job);
 
     // Quit on unsupported compression type.
     if (compCtl > RFB.TIGHT_MAX_SUBENCODING) {
       throw new ErrorException("TightDecoder: bad subencoding value received");
     }
 
-    int w = r.width(), h = r.height();
-    int[] stride = { w };
-    Object buf = handler.getRawPixelsRW(stride);
-    int pad = stride[0] - w;
-    int ptr = r.tl.y * stride[0] + r.tl.x;
+    stride[0] = r.width();
+    job.buf = handler.getRawPixelsRW(stride);
+    job.stride = stride[0];
 
     // "Fill" compression type.
     if (compCtl == RFB.TIGHT_FILL) {
-      if (cutZeros) {
-        byte[] bytebuf = new byte[3];
-        is.readBytes(bytebuf, 0, 3);
-        int pix = (bytebuf[0] & 0xff) << serverpf.redShift |
-                  (bytebuf[1] & 0xff) << serverpf.greenShift |
-                  (bytebuf[2] & 0xff) << serverpf.blueShift | (0xff << 24);
-        while (h > 0) {
-          Arrays.fill((int[])buf, ptr, ptr + w, pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else if (buf instanceof byte[]) {
-        int pix = is.readU8();
-        while (h > 0) {
-          Arrays.fill((byte[])buf, ptr, ptr + w, (byte)pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else if (buf instanceof short[]) {
-        int pix = is.readPixel(bpp / 8, serverpf.bigEndian);
-        while (h > 0) {
-          Arrays.fill((short[])buf, ptr, ptr + w, (short)pix);
-          ptr += stride[0];
-          h--;
-        }
-      } else {
-        // We should never get here
-        throw new ErrorException("Unsupported pixel type");
-      }
-      handler.releaseRawPixels(r);
-      return;
+      job.type = Job.FILL;
+      job.fillPix = kernel.readFillPixel(is, tightPalette);
+      return true;
     }
 
     // "Basic" compression type.
+    job.type = Job.BASIC;
     int palSize = 0;
-    boolean useGradient = false;
 
     if ((compCtl & RFB.TIGHT_EXPLICIT_FILTER) != 0) {
       int filterId = is.readU8();
@@ -213,17 +492,11 @@ public class TightDecoder extends Decoder {
       switch (filterId) {
         case RFB.TIGHT_FILTER_PALETTE:
           palSize = is.readU8() + 1;
-          checkPalette(bpp, cutZeros);
-          if (cutZeros) {
-            is.readBytes(tightPalette, 0, palSize * 3);
-            serverpf.bufferFromRGB((int[])palette, 0, tightPalette, 0,
-                                   palSize);
-          } else
-            is.readPixels(palette, palSize, serverpf.bpp / 8,
-                          serverpf.bigEndian);
+          job.palette = kernel.readPalette(is, job.palette, palSize,
+                                           tightPalette);
           break;
         case RFB.TIGHT_FILTER_GRADIENT:
-          useGradient = true;
+          job.useGradient = true;
           break;
         case RFB.TIGHT_FILTER_COPY:
           break;
@@ -231,368 +504,315 @@ public class TightDecoder extends Decoder {
           throw new ErrorException("TightDecoder: unknown filter code recieved");
       }
     }
+    job.palSize = palSize;
 
-    int bppp = bpp;
-    if (palSize != 0) {
+    int bppp = kernel.rawBpp;
+    if (palSize != 0)
       bppp = (palSize <= 2) ? 1 : 8;
-    } else if (cutZeros) {
-      bppp = 24;
-    }
 
     // Determine if the data should be decompressed or just copied.
     int rowSize = (r.width() * bppp + 7) / 8;
     int dataSize = r.height() * rowSize;
-    int streamId = -1;
+    job.rawSize = dataSize;
 
-    // Allocate netbuf and read in data
+    // Read in the data
     if (dataSize < TIGHT_MIN_TO_COMPRESS || readUncompressed) {
       if (dataSize >= TIGHT_MIN_TO_COMPRESS)
         dataSize = is.readCompactLength();
-      checkDecodebuf(dataSize);
-      is.readBytes(decodebuf, 0, dataSize);
+      checkJobData(job, Math.max(dataSize, job.rawSize));
+      is.readBytes(job.data, 0, dataSize);
+      job.dataLen = dataSize;
     } else {
       int length = is.readCompactLength();
-      checkNetbuf(length);
-      is.readBytes(netbuf, 0, length);
-      streamId = compCtl & 0x03;
-      checkDecodebuf(dataSize);
-      inflater[streamId].setInput(netbuf, 0, length);
-      try {
-        inflater[streamId].inflate(decodebuf, 0, dataSize);
-      } catch (DataFormatException e) {
-        throw new ErrorException(e.getMessage());
-      }
-    }
-
-    int srcPtr = 0;
-
-    if (palSize == 0) {
-      // Truecolor data.
-      if (useGradient) {
-        if (cutZeros) {
-          filterGradient24((int[])buf, stride[0], r);
-        } else if (bpp == 16) {
-          filterGradient16((short[])buf, stride[0], r);
-        } else {
-          // We should never get here
-          throw new ErrorException("Unsupported pixel type");
-        }
-      } else {
-        // Copy
-        if (cutZeros) {
-          serverpf.bufferFromRGB((int[])buf, r.tl.x, r.tl.y, stride[0],
-                                 decodebuf, w, h);
-        } else if (buf instanceof byte[]) {
-          while (h > 0) {
-            System.arraycopy(decodebuf, srcPtr, (byte[])buf, ptr, w);
-            ptr += stride[0];
-            srcPtr += w;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((short[])buf)[ptr++] = getShort(decodebuf, srcPtr);
-              srcPtr += 2;
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          // We should never get here
-          throw new ErrorException("Unsupported pixel type");
-        }
-      }
-    } else {
-      // Indexed color
-      int x, bits;
-      if (palSize <= 2) {
-        // 2-color palette
-        int remainder = w % 8;
-        int w8 = w - remainder;
-        if (buf instanceof byte[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 7 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 6 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 5 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 4 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 3 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 2 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> 1 & 1];
-              ((byte[])buf)[ptr++] = ((byte[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((byte[])buf)[ptr++] = ((byte[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 7 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 6 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 5 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 4 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 3 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 2 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits >> 1 & 1];
-              ((short[])buf)[ptr++] = ((short[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((short[])buf)[ptr++] = ((short[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          while (h > 0) {
-            int endOfRow = ptr + w8;
-            while (ptr < endOfRow) {
-              bits = decodebuf[srcPtr++];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 7 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 6 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 5 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 4 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 3 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 2 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits >> 1 & 1];
-              ((int[])buf)[ptr++] = ((int[])palette)[bits & 1];
-            }
-            if (remainder != 0) {
-              bits = decodebuf[srcPtr++];
-              for (int b = 7; b >= 8 - remainder; b--) {
-                ((int[])buf)[ptr++] = ((int[])palette)[bits >> b & 1];
-              }
-            }
-            ptr += pad;
-            h--;
-          }
-        }
+      job.dataLen = length;
+      job.streamId = compCtl & 0x03;
+      if (workers == null) {
+        // The rectangle will be decoded before anything else is read from
+        // the InStream, so the compressed data can stay where it is.
+        job.inflateFromStream = true;
       } else {
-        // 256-color palette
-        if (buf instanceof byte[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((byte[])buf)[ptr++] =
-                ((byte[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        } else if (buf instanceof short[]) {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((short[])buf)[ptr++] =
-                ((short[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        } else {
-          while (h > 0) {
-            int endOfRow = ptr + w;
-            while (ptr < endOfRow) {
-              ((int[])buf)[ptr++] =
-                ((int[])palette)[decodebuf[srcPtr++] & 0xff];
-            }
-            ptr += pad;
-            h--;
-          }
-        }
+        checkJobData(job, length);
+        is.readBytes(job.data, 0, length);
       }
     }
+    return true;
+  }
 
-    handler.releaseRawPixels(r);
+  // Jobs are recycled in no particular order, so each job's data buffer is
+  // grown to the size of the largest buffer that any job has needed.
+  // Otherwise, a large rectangle could be assigned to a job with a small
+  // buffer long after the buffers should have reached their steady-state
+  // sizes.
+  private void checkJobData(Job job, int size) {
+    if (size > maxJobData)
+      maxJobData = size;
+    job.checkData(maxJobData);
   }
 
-  private void decompressJpegRect(Rect r, InStream is,
-                                  CMsgHandler handler) {
+  private boolean readJpegJob(InStream is, Job job) {
     // Read length
     int compressedLen = is.readCompactLength();
     if (compressedLen <= 0)
       vlog.info("Incorrect data received from the server.");
 
-    // Allocate netbuf and read in data
-    checkNetbuf(compressedLen);
-    is.readBytes(netbuf, 0, compressedLen);
-
-    if (tjhandle != 0) {
-
-      int[] stride = new int[1];
-      Object data = handler.getRawPixelsRW(stride);
-      int tjpf = TJPF_RGB;
-      PixelFormat pf = handler.cp.pf();
-
-      if (pf.is888()) {
-        int redShift, greenShift, blueShift;
-
-        if (pf.bigEndian) {
-          redShift = 24 - pf.redShift;
-          greenShift = 24 - pf.greenShift;
-          blueShift = 24 - pf.blueShift;
-        } else {
-          redShift = pf.redShift;
-          greenShift = pf.greenShift;
-          blueShift = pf.blueShift;
-        }
-
-        if (redShift == 0 && greenShift == 8 && blueShift == 16)
-          tjpf = TJPF_RGBX;
-        if (redShift == 16 && greenShift == 8 && blueShift == 0)
-          tjpf = TJPF_BGRX;
-        if (redShift == 24 && greenShift == 16 && blueShift == 8)
-          tjpf = TJPF_XBGR;
-        if (redShift == 8 && greenShift == 16 && blueShift == 24)
-          tjpf = TJPF_XRGB;
-
-        try {
-          tjDecompress(tjhandle, netbuf, compressedLen, (int[])data, r.tl.x,
-                       r.tl.y, r.width(), stride[0], r.height(), tjpf, 0);
-        } catch (Exception e) {
-          throw new SystemException(e);
-        }
-      } else {
-        byte[] rgbBuf = new byte[r.width() * r.height() * 3];
-        try {
-          tjDecompress(tjhandle, netbuf, compressedLen, rgbBuf, 0, 0,
-                       r.width(), 0, r.height(), TJPF_RGB, 0);
-        } catch (Exception e) {
-          throw new SystemException(e);
-        }
-        pf.bufferFromRGB(data, r.tl.x, r.tl.y, stride[0], rgbBuf,
-                         r.width(), r.height());
-      }
-      handler.releaseRawPixels(r);
-      return;
+    // Read in data
+    checkJobData(job, compressedLen);
+    is.readBytes(job.data, 0, compressedLen);
+    job.dataLen = compressedLen;
+
+    if (tjhandle != 0 || useImageIO) {
+      job.buf = handler.getRawPixelsRW(stride);
+      job.stride = stride[0];
+      job.type = Job.JPEG;
+      job.jpegScaleShift = tjhandle != 0 ?
+        Integer.numberOfTrailingZeros(handler.getJPEGScalingDenom()) : 0;
+      return true;
     }
 
+    // Without a JPEG decoder of our own, the image has to be drawn by the
+    // handler, so it can't be deferred.
+    flush();
+
     // Create an Image object from the JPEG data.
-    Image jpeg = TK.createImage(netbuf);
+    Image jpeg = TK.createImage(job.data, 0, compressedLen);
     jpeg.setAccelerationPriority(1);
-    handler.imageRect(r, jpeg);
+    handler.imageRect(job.r, jpeg);
     jpeg.flush();
+    return false;
   }
 
-  /* NOTE: we support gradient encoding only for backward compatibility with
-     TightVNC 1.3.x.  It is decidedly non-optimal. */
+  // Decode stage: runs either on the RFB thread or on a worker thread.
+  // inf is the Inflater for the job's zlib stream, if any.
+  void decode(Job job, Inflater inf, Context ctx) {
+    switch (job.type) {
+      case Job.FILL:
+        fill(job);  break;
+      case Job.JPEG:
+        decompressJpegRect(job, ctx);  break;
+      default:
+        decodeBasic(job, inf, ctx);
+    }
+  }
 
-  private void filterGradient24(int[] buf, int stride, Rect r) {
+  private static void fill(Job job) {
+    Rect r = job.r;
+    job.kernel.fill(job.buf, r.tl.y * job.stride + r.tl.x, job.stride,
+                    r.width(), r.height(), job.fillPix);
+  }
 
-    int x, y, c;
-    int ptr = r.tl.y * stride + r.tl.x;
-    int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] pix = new int[3];
-    int[] est = new int[3];
+  private void decodeBasic(Job job, Inflater inf, Context ctx) {
+    Rect r = job.r;
+    int w = r.width(), h = r.height();
+    int ptr = r.tl.y * job.stride + r.tl.x;
 
-    // Set up shortcut variables
-    int rectHeight = r.height();
-    int rectWidth = r.width();
+    if (job.streamId < 0) {
+      expand(job, job.data, ptr, w, h, ctx);
+      return;
+    }
 
-    for (y = 0; y < rectHeight; y++) {
-      /* First pixel in a row */
-      for (c = 0; c < 3; c++) {
-        pix[c] = (decodebuf[y * rectWidth * 3 + c] + prevRow[c]) & 0xff;
-        thisRow[c] = pix[c];
+    if (job.inflateFromStream) {
+      // Discard any input left over from the previous rectangle, since it
+      // points into the InStream's buffer.
+      inf.setInput(NO_INPUT, 0, 0);
+      streamBytesLeft = job.dataLen;
+    } else
+      inf.setInput(job.data, 0, job.dataLen);
+
+    if (job.useGradient) {
+      // The gradient filter has to see the whole rectangle.
+      byte[] decodebuf = ctx.checkDecodebuf(job.rawSize);
+      inflate(job, inf, decodebuf, 0, job.rawSize);
+      expand(job, decodebuf, ptr, w, h, ctx);
+    } else if (job.palSize == 0 && job.kernel.rawBpp == 8) {
+      // 8-bit truecolor pixels can be inflated straight into the framebuffer.
+      byte[] buf = (byte[])job.buf;
+      for (; h > 0; h--, ptr += job.stride)
+        inflate(job, inf, buf, ptr, w);
+    } else {
+      int rowSize = job.rawSize / h;
+      int rows = Math.min(Math.max(INFLATE_CHUNK / rowSize, 1), h);
+      byte[] decodebuf = ctx.checkDecodebuf(rows * rowSize);
+      while (h > 0) {
+        if (rows > h) rows = h;
+        inflate(job, inf, decodebuf, 0, rows * rowSize);
+        expand(job, decodebuf, ptr, w, rows, ctx);
+        ptr += rows * job.stride;
+        h -= rows;
       }
-      buf[ptr + y * stride] = serverpf.pixelFromRGB(pix[0], pix[1], pix[2],
-                                                    null);
-
-      /* Remaining pixels of a row */
-      for (x = 1; x < rectWidth; x++) {
-        for (c = 0; c < 3; c++) {
-          est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
-          if (est[c] > 0xFF) {
-            est[c] = 0xFF;
-          } else if (est[c] < 0) {
-            est[c] = 0;
-          }
-          pix[c] = (decodebuf[(y * rectWidth + x) * 3 + c] + est[c]) & 0xff;
-          thisRow[x * 3 + c] = pix[c];
-        }
-        buf[ptr + y * stride + x] = serverpf.pixelFromRGB(pix[0], pix[1],
-                                                          pix[2], null);
+    }
+
+    if (job.inflateFromStream) {
+      // The rest of the compressed data (normally just the end of the
+      // current zlib block and the sync flush marker) has to go through the
+      // Inflater as well.  Otherwise, the stream would be left in the middle
+      // of a block.
+      while (streamBytesLeft > 0 || !inf.needsInput()) {
+        if (inf.needsInput())
+          feedInflater(job, inf);
+        inflate(inf, discardBuf, 0, discardBuf.length);
       }
+    }
+  }
+
+  // Inflate exactly len bytes into dst.  If the job's compressed data is
+  // still in the InStream, then it is fed to the Inflater straight from the
+  // InStream's buffer.
+  private void inflate(Job job, Inflater inf, byte[] dst, int dstPtr,
+                       int len) {
+    while (len > 0) {
+      if (inf.needsInput())
+        feedInflater(job, inf);
+      int n = inflate(inf, dst, dstPtr, len);
+      dstPtr += n;
+      len -= n;
+    }
+  }
+
+  private static int inflate(Inflater inf, byte[] dst, int dstPtr, int len) {
+    int n;
+    try {
+      n = inf.inflate(dst, dstPtr, len);
+    } catch (DataFormatException e) {
+      throw new ErrorException(e.getMessage());
+    }
+    if (n == 0 && !inf.needsInput())
+      throw new ErrorException("TightDecoder: unexpected end of zlib stream");
+    return n;
+  }
+
+  private void feedInflater(Job job, Inflater inf) {
+    if (!job.inflateFromStream || streamBytesLeft <= 0)
+      throw new ErrorException("TightDecoder: not enough zlib data");
+
+    // The Inflater only reads the input during inflate(), and the InStream
+    // can't move the data in its buffer until more input is needed, so the
+    // input can be marked as consumed right away.
+    InStream is = reader.getInStream();
+    int n = is.check(1, streamBytesLeft);
+    inf.setInput(is.getbuf(), is.getptr(), n);
+    is.setptr(is.getptr() + n);
+    streamBytesLeft -= n;
+  }
 
-      System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
+  // Convert h rows of Tight pixel data in src into the framebuffer, starting
+  // at index ptr.
+  private static void expand(Job job, byte[] src, int ptr, int w, int h,
+                             Context ctx) {
+    TightKernel kernel = job.kernel;
+    if (job.palSize == 0) {
+      // Truecolor data.
+      if (job.useGradient)
+        kernel.gradient(src, job.buf, ptr, job.stride, w, h, ctx);
+      else
+        kernel.copy(src, job.buf, ptr, job.stride, w, h);
+    } else if (job.palSize <= 2) {
+      // 2-color palette
+      kernel.palette2(src, job.palette, job.buf, ptr, job.stride, w, h);
+    } else {
+      // 256-color palette
+      kernel.palette256(src, job.palette, job.buf, ptr, job.stride, w, h);
     }
   }
 
-  private void filterGradient16(short[] buf, int stride, Rect r) {
-
-    int x, y, c, p;
-    int ptr = r.tl.y * stride + r.tl.x;
-    int[] prevRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] thisRow = new int[TIGHT_MAX_WIDTH * 3];
-    int[] pix = new int[3];
-    int[] est = new int[3];
-    int[] max = new int[] { serverpf.redMax, serverpf.greenMax,
-                            serverpf.blueMax };
-    int[] shift = new int[] { serverpf.redShift, serverpf.greenShift,
-                              serverpf.blueShift };
-
-    // Set up shortcut variables
-    int rectHeight = r.height();
-    int rectWidth = r.width();
-
-    for (y = 0; y < rectHeight; y++) {
-      /* First pixel in a row */
-      p = getShort(decodebuf, y * rectWidth * 2);
-      for (c = 0; c < 3; c++) {
-        pix[c] = ((p >> shift[c]) + prevRow[c]) & max[c];
-        thisRow[c] = pix[c];
+  private void decompressJpegRect(Job job, Context ctx) {
+    Rect r = job.r;
+    TightKernel kernel = job.kernel;
+
+    if (ctx.tjhandle == 0) {
+      ctx.getJPEGDecoder().decode(job.data, job.dataLen, kernel, job.buf,
+                                  r.tl.y * job.stride + r.tl.x, job.stride,
+                                  r.width(), r.height());
+    } else if (kernel.tjpf >= 0 && job.jpegScaleShift > 0) {
+      // Decompress the image at reduced size, using TurboJPEG's DCT scaling,
+      // and replicate the pixels into the framebuffer.  TurboJPEG rounds the
+      // scaled dimensions up.
+      int shift = job.jpegScaleShift, denom = 1 << shift;
+      int sw = (r.width() + denom - 1) >> shift;
+      int sh = (r.height() + denom - 1) >> shift;
+      int[] scaledBuf = ctx.checkScaledBuf(sw * sh);
+      try {
+        tjDecompress(ctx.tjhandle, job.data, job.dataLen, scaledBuf, 0, 0,
+                     sw, sw, sh, kernel.tjpf, 0);
+      } catch (Exception e) {
+        throw new SystemException(e);
       }
-      buf[ptr + y * stride] = (short)((pix[0] << shift[0]) |
-                                      (pix[1] << shift[1]) |
-                                      (pix[2] << shift[2]));
-
-      /* Remaining pixels of a row */
-      for (x = 1; x < rectWidth; x++) {
-        p = getShort(decodebuf, (y * rectWidth + x) * 2);
-        for (c = 0; c < 3; c++) {
-          est[c] = prevRow[x * 3 + c] + pix[c] - prevRow[(x - 1) * 3 + c];
-          if (est[c] > max[c]) {
-            est[c] = max[c];
-          } else if (est[c] < 0) {
-            est[c] = 0;
-          }
-          pix[c] = ((p >> shift[c]) + est[c]) & max[c];
-          thisRow[x * 3 + c] = pix[c];
-        }
-        buf[ptr + y * stride + x] = (short)((pix[0] << shift[0]) |
-                                            (pix[1] << shift[1]) |
-                                            (pix[2] << shift[2]));
+      replicate(scaledBuf, sw, (int[])job.buf, r.tl.y * job.stride + r.tl.x,
+                job.stride, r.width(), r.height(), shift);
+    } else if (kernel.tjpf >= 0) {
+      try {
+        tjDecompress(ctx.tjhandle, job.data, job.dataLen, (int[])job.buf,
+                     r.tl.x, r.tl.y, r.width(), job.stride, r.height(),
+                     kernel.tjpf, 0);
+      } catch (Exception e) {
+        throw new SystemException(e);
+      }
+    } else {
+      byte[] rgbBuf = ctx.checkRGBBuf(r.width() * r.height() * 3);
+      try {
+        tjDecompress(ctx.tjhandle, job.data, job.dataLen, rgbBuf, 0, 0,
+                     r.width(), 0, r.height(), TJPF_RGB, 0);
+      } catch (Exception e) {
+        throw new SystemException(e);
       }
+      kernel.pf.bufferFromRGB(job.buf, r.tl.x, r.tl.y, job.stride, rgbBuf,
+                              r.width(), r.height());
+    }
+  }
 
-      System.arraycopy(thisRow, 0, prevRow, 0, prevRow.length);
+  // Enlarge a (w >> shift) x (h >> shift) image (rounded up) by a factor of
+  // 2^shift in each direction, and write the w x h result into dst, starting
+  // at index ptr.
+  private static void replicate(int[] src, int srcStride, int[] dst, int ptr,
+                                int stride, int w, int h, int shift) {
+    int fullCols = w >> shift, extra = w & ((1 << shift) - 1);
+    int rep = 1 << shift;
+    for (int y = 0; y < h; y++, ptr += stride) {
+      int srcPtr = (y >> shift) * srcStride;
+      if ((y & (rep - 1)) != 0) {
+        // Every row within a block of rows is identical.
+        System.arraycopy(dst, ptr - stride, dst, ptr, w);
+        continue;
+      }
+      int dstPtr = ptr;
+      for (int x = 0; x < fullCols; x++) {
+        int pix = src[srcPtr + x];
+        for (int i = 0; i < rep; i++)
+          dst[dstPtr + i] = pix;
+        dstPtr += rep;
+      }
+      if (extra != 0) {
+        int pix = src[srcPtr + fullCols];
+        for (int i = 0; i < extra; i++)
+          dst[dstPtr + i] = pix;
+      }
     }
   }
 
   private CMsgReader reader;
+  private CMsgHandler handler;
   private Inflater[] inflater;
-  private PixelFormat serverpf;
   private long tjhandle;
-  private Object palette;
+  private boolean useImageIO;
   private byte[] tightPalette;
-  private byte[] netbuf;
-  private int netbufSize;
-  private byte[] decodebuf;
-  private int decodebufSize;
+  private TightKernel kernel;
+  // Compressed bytes of the current rectangle that are still in the InStream
+  // (serial decoding only)
+  private int streamBytesLeft;
+  private final byte[] discardBuf = new byte[1024];
+  private final int[] stride = new int[1];
+
+  // Serial decoding
+  private Job serialJob;
+  private Context serialCtx;
+
+  // Parallel decoding (RFB thread only, except for the queues)
+  private Worker[] workers;
+  private BlockingQueue<Job>[] laneQueues;
+  private BlockingQueue<Job> jpegQueue;
+  private Job[] pending;
+  private int pendingHead, nPending;
+  private ArrayDeque<Job> freeJobs;
+  private int maxJobData;
 
   private native long tjInitDecompress() throws Exception;
   private native void tjDecompress(long handle, byte[] srcBuf, int size,
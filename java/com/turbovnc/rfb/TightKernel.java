@@ -0,0 +1,471 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- TightKernel - the pixel loops used by TightDecoder, specialized for
+// each type of framebuffer.  A kernel is selected once, when the pixel format
+// changes, so the per-rectangle code never has to test the type of the
+// framebuffer array, and each loop only ever sees one array type.
+
+package com.turbovnc.rfb;
+
+import com.turbovnc.rdr.*;
+import java.util.Arrays;
+
+abstract class TightKernel {
+
+  static TightKernel create(PixelFormat pf) {
+    if (pf.bpp == 32 && pf.is888())
+      return new RGB888(pf);
+    switch (pf.bpp) {
+      case 8:   return new Bpp8(pf);
+      case 16:  return new Bpp16(pf);
+      case 32:  return new Bpp32(pf);
+    }
+    // We should never get here
+    throw new ErrorException("Unsupported pixel format");
+  }
+
+  TightKernel(PixelFormat pf_, int rawBpp_) {
+    pf = pf_;
+    rawBpp = rawBpp_;
+  }
+
+  // Parse stage
+
+  // Read the pixel value of a "fill" rectangle.  tmp must be at least 3
+  // bytes long.
+  abstract int readFillPixel(InStream is, byte[] tmp);
+
+  // Read a palette of palSize entries into palette, or into a new array if
+  // palette is not of the right type.  tmp must be at least palSize * 3
+  // bytes long.  Returns the palette.
+  abstract Object readPalette(InStream is, Object palette, int palSize,
+                              byte[] tmp);
+
+  // Decode stage.  All of these write a w x h rectangle into buf, starting
+  // at index ptr.
+
+  abstract void fill(Object buf, int ptr, int stride, int w, int h, int pix);
+
+  abstract void copy(byte[] src, Object buf, int ptr, int stride, int w,
+                     int h);
+
+  // The 2-color loops are branch-free.  Shifting the bit for a pixel into the
+  // sign bit and back yields a mask of all 0s or all 1s, which selects
+  // either p0 or p0 ^ (p0 ^ p1) = p1.
+  abstract void palette2(byte[] src, Object palette, Object buf, int ptr,
+                         int stride, int w, int h);
+
+  // Convert 24-bit RGB pixels (such as the output of a JPEG decoder) with a
+  // row stride of srcStride bytes, starting at src[srcPtr].
+  abstract void copyRGB(byte[] src, int srcPtr, int srcStride, Object buf,
+                        int ptr, int stride, int w, int h);
+
+  abstract void palette256(byte[] src, Object palette, Object buf, int ptr,
+                           int stride, int w, int h);
+
+  /* NOTE: we support gradient encoding only for backward compatibility with
+     TightVNC 1.3.x.  It is decidedly non-optimal. */
+
+  void gradient(byte[] src, Object buf, int ptr, int stride, int w, int h,
+                TightDecoder.Context ctx) {
+    // We should never get here
+    throw new ErrorException("Unsupported pixel type");
+  }
+
+  final PixelFormat pf;
+
+  // Bits per pixel of truecolor (unfiltered or gradient-filtered) data on
+  // the wire
+  final int rawBpp;
+
+  // TurboJPEG pixel format that can be decompressed directly into the
+  // framebuffer, or -1 if the JPEG image must be converted from RGB
+  int tjpf = -1;
+
+  static final class Bpp8 extends TightKernel {
+
+    Bpp8(PixelFormat pf) { super(pf, 8); }
+
+    int readFillPixel(InStream is, byte[] tmp) {
+      return is.readU8();
+    }
+
+    Object readPalette(InStream is, Object palette, int palSize,
+                       byte[] tmp) {
+      if (!(palette instanceof byte[]))
+        palette = new byte[256];
+      is.readPixels(palette, palSize, 1, pf.bigEndian);
+      return palette;
+    }
+
+    void fill(Object buf, int ptr, int stride, int w, int h, int pix) {
+      byte[] dst = (byte[])buf;
+      byte p = (byte)pix;
+      for (; h > 0; h--, ptr += stride)
+        Arrays.fill(dst, ptr, ptr + w, p);
+    }
+
+    void copy(byte[] src, Object buf, int ptr, int stride, int w, int h) {
+      byte[] dst = (byte[])buf;
+      int srcPtr = 0;
+      for (; h > 0; h--, ptr += stride, srcPtr += w)
+        System.arraycopy(src, srcPtr, dst, ptr, w);
+    }
+
+    void copyRGB(byte[] src, int srcPtr, int srcStride, Object buf, int ptr,
+                 int stride, int w, int h) {
+      byte[] dst = (byte[])buf;
+      for (; h > 0; h--, ptr += stride, srcPtr += srcStride) {
+        for (int x = 0, i = srcPtr; x < w; x++, i += 3)
+          dst[ptr + x] = (byte)pf.pixelFromRGB(src[i] & 0xff,
+                                               src[i + 1] & 0xff,
+                                               src[i + 2] & 0xff, null);
+      }
+    }
+
+    void palette2(byte[] src, Object palette, Object buf, int ptr,
+                  int stride, int w, int h) {
+      byte[] dst = (byte[])buf;
+      byte p0 = ((byte[])palette)[0], p1 = ((byte[])palette)[1];
+      int diff = p0 ^ p1;
+      int w8 = w & ~7, srcPtr = 0;
+      for (; h > 0; h--, ptr += stride) {
+        int x = 0;
+        for (; x < w8; x += 8) {
+          int bits = src[srcPtr++], i = ptr + x;
+          dst[i]     = (byte)(p0 ^ (diff & bits << 24 >> 31));
+          dst[i + 1] = (byte)(p0 ^ (diff & bits << 25 >> 31));
+          dst[i + 2] = (byte)(p0 ^ (diff & bits << 26 >> 31));
+          dst[i + 3] = (byte)(p0 ^ (diff & bits << 27 >> 31));
+          dst[i + 4] = (byte)(p0 ^ (diff & bits << 28 >> 31));
+          dst[i + 5] = (byte)(p0 ^ (diff & bits << 29 >> 31));
+          dst[i + 6] = (byte)(p0 ^ (diff & bits << 30 >> 31));
+          dst[i + 7] = (byte)(p0 ^ (diff & bits << 31 >> 31));
+        }
+        if (x < w) {
+          int bits = src[srcPtr++];
+          for (int mask = 0x80; x < w; x++, mask >>= 1)
+            dst[ptr + x] = (bits & mask) != 0 ? p1 : p0;
+        }
+      }
+    }
+
+    void palette256(byte[] src, Object palette, Object buf, int ptr,
+                    int stride, int w, int h) {
+      byte[] dst = (byte[])buf;
+      byte[] pal = (byte[])palette;
+      int srcPtr = 0;
+      for (; h > 0; h--, ptr += stride, srcPtr += w) {
+        for (int x = 0; x < w; x++)
+          dst[ptr + x] = pal[src[srcPtr + x] & 0xff];
+      }
+    }
+  }
+
+  static final class Bpp16 extends TightKernel {
+
+    Bpp16(PixelFormat pf) { super(pf, 16); }
+
+    int readFillPixel(InStream is, byte[] tmp) {
+      return is.readPixel(2, pf.bigEndian);
+    }
+
+    Object readPalette(InStream is, Object palette, int palSize,
+                       byte[] tmp) {
+      if (!(palette instanceof short[]))
+        palette = new short[256];
+      is.readPixels(palette, palSize, 2, pf.bigEndian);
+      return palette;
+    }
+
+    void fill(Object buf, int ptr, int stride, int w, int h, int pix) {
+      short[] dst = (short[])buf;
+      short p = (short)pix;
+      for (; h > 0; h--, ptr += stride)
+        Arrays.fill(dst, ptr, ptr + w, p);
+    }
+
+    void copy(byte[] src, Object buf, int ptr, int stride, int w, int h) {
+      short[] dst = (short[])buf;
+      int srcPtr = 0;
+      for (; h > 0; h--, ptr += stride) {
+        for (int x = 0; x < w; x++, srcPtr += 2)
+          dst[ptr + x] = (short)((src[srcPtr] & 0xff) |
+                                 (src[srcPtr + 1] & 0xff) << 8);
+      }
+    }
+
+    void copyRGB(byte[] src, int srcPtr, int srcStride, Object buf, int ptr,
+                 int stride, int w, int h) {
+      short[] dst = (short[])buf;
+      for (; h > 0; h--, ptr += stride, srcPtr += srcStride) {
+        for (int x = 0, i = srcPtr; x < w; x++, i += 3)
+          dst[ptr + x] = (short)pf.pixelFromRGB(src[i] & 0xff,
+                                                src[i + 1] & 0xff,
+                                                src[i + 2] & 0xff, null);
+      }
+    }
+
+    void palette2(byte[] src, Object palette, Object buf, int ptr,
+                  int stride, int w, int h) {
+      short[] dst = (short[])buf;
+      short p0 = ((short[])palette)[0], p1 = ((short[])palette)[1];
+      int diff = p0 ^ p1;
+      int w8 = w & ~7, srcPtr = 0;
+      for (; h > 0; h--, ptr += stride) {
+        int x = 0;
+        for (; x < w8; x += 8) {
+          int bits = src[srcPtr++], i = ptr + x;
+          dst[i]     = (short)(p0 ^ (diff & bits << 24 >> 31));
+          dst[i + 1] = (short)(p0 ^ (diff & bits << 25 >> 31));
+          dst[i + 2] = (short)(p0 ^ (diff & bits << 26 >> 31));
+          dst[i + 3] = (short)(p0 ^ (diff & bits << 27 >> 31));
+          dst[i + 4] = (short)(p0 ^ (diff & bits << 28 >> 31));
+          dst[i + 5] = (short)(p0 ^ (diff & bits << 29 >> 31));
+          dst[i + 6] = (short)(p0 ^ (diff & bits << 30 >> 31));
+          dst[i + 7] = (short)(p0 ^ (diff & bits << 31 >> 31));
+        }
+        if (x < w) {
+          int bits = src[srcPtr++];
+          for (int mask = 0x80; x < w; x++, mask >>= 1)
+            dst[ptr + x] = (bits & mask) != 0 ? p1 : p0;
+        }
+      }
+    }
+
+    void palette256(byte[] src, Object palette, Object buf, int ptr,
+                    int stride, int w, int h) {
+      short[] dst = (short[])buf;
+      short[] pal = (short[])palette;
+      int srcPtr = 0;
+      for (; h > 0; h--, ptr += stride, srcPtr += w) {
+        for (int x = 0; x < w; x++)
+          dst[ptr + x] = pal[src[srcPtr + x] & 0xff];
+      }
+    }
+
+    void gradient(byte[] src, Object buf, int ptr, int stride, int w, int h,
+                  TightDecoder.Context ctx) {
+      short[] dst = (short[])buf;
+      int rMax = pf.redMax, gMax = pf.greenMax, bMax = pf.blueMax;
+      int rShift = pf.redShift, gShift = pf.greenShift,
+        bShift = pf.blueShift;
+
+      ctx.checkGradientRows(w);
+      int[] prevRow = ctx.prevRow;
+      int[] thisRow = ctx.thisRow;
+      int srcPtr = 0;
+
+      for (; h > 0; h--, ptr += stride) {
+        int r = 0, g = 0, b = 0;
+        for (int x = 0, i = 0; x < w; x++, i += 3, srcPtr += 2) {
+          int p = (src[srcPtr] & 0xff) | (src[srcPtr + 1] & 0xff) << 8;
+          int er, eg, eb;
+          if (x == 0) {
+            /* First pixel in a row */
+            er = prevRow[0];  eg = prevRow[1];  eb = prevRow[2];
+          } else {
+            er = clamp(prevRow[i] + r - prevRow[i - 3], rMax);
+            eg = clamp(prevRow[i + 1] + g - prevRow[i - 2], gMax);
+            eb = clamp(prevRow[i + 2] + b - prevRow[i - 1], bMax);
+          }
+          r = ((p >> rShift) + er) & rMax;
+          g = ((p >> gShift) + eg) & gMax;
+          b = ((p >> bShift) + eb) & bMax;
+          thisRow[i] = r;  thisRow[i + 1] = g;  thisRow[i + 2] = b;
+          dst[ptr + x] = (short)((r << rShift) | (g << gShift) |
+                                 (b << bShift));
+        }
+        System.arraycopy(thisRow, 0, prevRow, 0, w * 3);
+      }
+    }
+  }
+
+  // 32-bit pixels that aren't 888.  The Tight protocol only allows palette
+  // rectangles in this format.
+  static class Bpp32 extends TightKernel {
+
+    Bpp32(PixelFormat pf, int rawBpp) { super(pf, rawBpp); }
+
+    Bpp32(PixelFormat pf) { this(pf, 32); }
+
+    int readFillPixel(InStream is, byte[] tmp) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel type");
+    }
+
+    Object readPalette(InStream is, Object palette, int palSize,
+                       byte[] tmp) {
+      if (!(palette instanceof int[]))
+        palette = new int[256];
+      is.readPixels(palette, palSize, 4, pf.bigEndian);
+      return palette;
+    }
+
+    void fill(Object buf, int ptr, int stride, int w, int h, int pix) {
+      int[] dst = (int[])buf;
+      for (; h > 0; h--, ptr += stride)
+        Arrays.fill(dst, ptr, ptr + w, pix);
+    }
+
+    void copy(byte[] src, Object buf, int ptr, int stride, int w, int h) {
+      // We should never get here
+      throw new ErrorException("Unsupported pixel type");
+    }
+
+    void copyRGB(byte[] src, int srcPtr, int srcStride, Object buf, int ptr,
+                 int stride, int w, int h) {
+      int[] dst = (int[])buf;
+      for (; h > 0; h--, ptr += stride, srcPtr += srcStride) {
+        for (int x = 0, i = srcPtr; x < w; x++, i += 3)
+          dst[ptr + x] = pf.pixelFromRGB(src[i] & 0xff, src[i + 1] & 0xff,
+                                         src[i + 2] & 0xff, null);
+      }
+    }
+
+    final void palette2(byte[] src, Object palette, Object buf, int ptr,
+                        int stride, int w, int h) {
+      int[] dst = (int[])buf;
+      int p0 = ((int[])palette)[0], p1 = ((int[])palette)[1];
+      int srcStride = (w + 7) >> 3, srcPtr = 0;
+      for (; h > 0; h--, ptr += stride, srcPtr += srcStride)
+        PixelLoops.INSTANCE.expandMono(src, srcPtr, dst, ptr, w, p0, p1);
+    }
+
+    final void palette256(byte[] src, Object palette, Object buf, int ptr,
+                          int stride, int w, int h) {
+      int[] dst = (int[])buf;
+      int[] pal = (int[])palette;
+      int srcPtr = 0;
+      for (; h > 0; h--, ptr += stride, srcPtr += w)
+        PixelLoops.INSTANCE.lookup(src, srcPtr, dst, ptr, w, pal);
+    }
+  }
+
+  // 32-bit 888 pixels.  Truecolor data is sent as 24-bit RGB.
+  static final class RGB888 extends Bpp32 {
+
+    static final int TJPF_RGB = 0;
+    static final int TJPF_RGBX = 2;
+    static final int TJPF_BGRX = 3;
+    static final int TJPF_XBGR = 4;
+    static final int TJPF_XRGB = 5;
+
+    RGB888(PixelFormat pf) {
+      super(pf, 24);
+
+      // Fill pixels and gradient-filtered pixels use the shifts as-is.
+      rShift = pf.redShift;  gShift = pf.greenShift;  bShift = pf.blueShift;
+
+      // Palettes and unfiltered data are converted in the same way as
+      // PixelFormat.bufferFromRGB() converts them.
+      if (pf.bigEndian) {
+        rShiftBE = 24 - pf.redShift;
+        gShiftBE = 24 - pf.greenShift;
+        bShiftBE = 24 - pf.blueShift;
+      } else {
+        rShiftBE = pf.redShift;
+        gShiftBE = pf.greenShift;
+        bShiftBE = pf.blueShift;
+      }
+      alphaMask = pf.alpha ? 0xff000000 : 0;
+
+      tjpf = TJPF_RGB;
+      if (rShiftBE == 0 && gShiftBE == 8 && bShiftBE == 16)
+        tjpf = TJPF_RGBX;
+      if (rShiftBE == 16 && gShiftBE == 8 && bShiftBE == 0)
+        tjpf = TJPF_BGRX;
+      if (rShiftBE == 24 && gShiftBE == 16 && bShiftBE == 8)
+        tjpf = TJPF_XBGR;
+      if (rShiftBE == 8 && gShiftBE == 16 && bShiftBE == 24)
+        tjpf = TJPF_XRGB;
+    }
+
+    int readFillPixel(InStream is, byte[] tmp) {
+      is.readBytes(tmp, 0, 3);
+      return (tmp[0] & 0xff) << rShift | (tmp[1] & 0xff) << gShift |
+             (tmp[2] & 0xff) << bShift | 0xff000000;
+    }
+
+    Object readPalette(InStream is, Object palette, int palSize,
+                       byte[] tmp) {
+      if (!(palette instanceof int[]))
+        palette = new int[256];
+      int[] pal = (int[])palette;
+      is.readBytes(tmp, 0, palSize * 3);
+      for (int i = 0, srcPtr = 0; i < palSize; i++, srcPtr += 3)
+        pal[i] = (tmp[srcPtr] & 0xff) << rShiftBE |
+                 (tmp[srcPtr + 1] & 0xff) << gShiftBE |
+                 (tmp[srcPtr + 2] & 0xff) << bShiftBE | alphaMask;
+      return palette;
+    }
+
+    void copy(byte[] src, Object buf, int ptr, int stride, int w, int h) {
+      copyRGB(src, 0, w * 3, buf, ptr, stride, w, h);
+    }
+
+    void copyRGB(byte[] src, int srcPtr, int srcStride, Object buf, int ptr,
+                 int stride, int w, int h) {
+      int[] dst = (int[])buf;
+      for (; h > 0; h--, ptr += stride, srcPtr += srcStride)
+        PixelLoops.INSTANCE.unpackRGB(src, srcPtr, dst, ptr, w, rShiftBE,
+                                      gShiftBE, bShiftBE, alphaMask);
+    }
+
+    void gradient(byte[] src, Object buf, int ptr, int stride, int w, int h,
+                  TightDecoder.Context ctx) {
+      int[] dst = (int[])buf;
+
+      ctx.checkGradientRows(w);
+      int[] prevRow = ctx.prevRow;
+      int[] thisRow = ctx.thisRow;
+      int srcPtr = 0;
+
+      for (; h > 0; h--, ptr += stride) {
+        int r = 0, g = 0, b = 0;
+        for (int x = 0, i = 0; x < w; x++, i += 3, srcPtr += 3) {
+          int er, eg, eb;
+          if (x == 0) {
+            /* First pixel in a row */
+            er = prevRow[0];  eg = prevRow[1];  eb = prevRow[2];
+          } else {
+            er = clamp(prevRow[i] + r - prevRow[i - 3], 0xff);
+            eg = clamp(prevRow[i + 1] + g - prevRow[i - 2], 0xff);
+            eb = clamp(prevRow[i + 2] + b - prevRow[i - 1], 0xff);
+          }
+          r = (src[srcPtr] + er) & 0xff;
+          g = (src[srcPtr + 1] + eg) & 0xff;
+          b = (src[srcPtr + 2] + eb) & 0xff;
+          thisRow[i] = r;  thisRow[i + 1] = g;  thisRow[i + 2] = b;
+          dst[ptr + x] = r << rShift | g << gShift | b << bShift |
+                         0xff000000;
+        }
+        System.arraycopy(thisRow, 0, prevRow, 0, w * 3);
+      }
+    }
+
+    private final int rShift, gShift, bShift;
+    private final int rShiftBE, gShiftBE, bShiftBE;
+    private final int alphaMask;
+  }
+
+  static int clamp(int value, int max) {
+    return value > max ? max : (value < 0 ? 0 : value);
+  }
+}
@@ -134,6 +134,39 @@ public final class Utils {
     return (double)System.nanoTime() / 1.0e9;
   }
 
+  // Return the number of bytes of heap memory that the calling thread has
+  // allocated so far, or -1 if the JVM can't measure that.
+  public static long getThreadAllocatedBytes() {
+    return getThreadAllocatedBytes(Thread.currentThread());
+  }
+
+  // Return the number of bytes of heap memory that the given thread has
+  // allocated so far, or -1 if the JVM can't measure that.
+  public static long getThreadAllocatedBytes(Thread thread) {
+    com.sun.management.ThreadMXBean bean = ThreadBean.BEAN;
+    if (bean == null || !bean.isThreadAllocatedMemoryEnabled())
+      return -1;
+    return bean.getThreadAllocatedBytes(thread.getId());
+  }
+
+  // Looking up the thread MXBean allocates memory, so that is done only once,
+  // the first time the MXBean is needed.
+  private static final class ThreadBean {
+    static final com.sun.management.ThreadMXBean BEAN = getBean();
+
+    private static com.sun.management.ThreadMXBean getBean() {
+      java.lang.management.ThreadMXBean bean =
+        java.lang.management.ManagementFactory.getThreadMXBean();
+      if (!(bean instanceof com.sun.management.ThreadMXBean))
+        return null;
+      com.sun.management.ThreadMXBean sunBean =
+        (com.sun.management.ThreadMXBean)bean;
+      if (!sunBean.isThreadAllocatedMemorySupported())
+        return null;
+      return sunBean;
+    }
+  }
+
   public static String convertCRLF(String buf) {
     return convertLF(buf).replaceAll("\\n", "\r\n");
   }
@@ -39,7 +39,7 @@ public class ZRLEDecoder extends Decoder {
 
     int length = is.readU32();
     zis.setUnderlying(is, length);
-    Rect t = new Rect();
+    Rect t = tile;
 
     for (t.tl.y = r.tl.y; t.tl.y < r.br.y; t.tl.y += 64) {
 
@@ -52,7 +52,6 @@ public class ZRLEDecoder extends Decoder {
         int mode = zis.readU8();
         boolean rle = (mode & 128) != 0;
         int palSize = mode & 127;
-        int[] palette = new int[128];
 
         zis.readPixels(palette, palSize, bytesPerPixel, bigEndian);
 
@@ -154,6 +153,12 @@ public class ZRLEDecoder extends Decoder {
     zis.reset();
   }
 
+  // The zlib stream starts over when a session capture is replayed.
+  public void reset() {
+    if (zis != null)
+      zis.restart();
+  }
+
   // NOTE: must be idempotent
   public void close() {
     if (zis != null) {
@@ -164,4 +169,6 @@ public class ZRLEDecoder extends Decoder {
 
   CMsgReader reader;
   ZlibInStream zis;
+  private final Rect tile = new Rect();
+  private final int[] palette = new int[128];
 }
@@ -21,6 +21,7 @@ package com.turbovnc.vncviewer;
 
 import java.awt.*;
 import java.awt.image.*;
+import java.util.Arrays;
 
 import com.turbovnc.rfb.*;
 import com.turbovnc.rdr.ErrorException;
@@ -28,6 +29,15 @@ import com.turbovnc.rdr.ErrorException;
 public class BIPixelBuffer extends PlatformPixelBuffer
   implements ImageObserver {
 
+  // If double buffering is enabled (using the turbovnc.doublebuffer system
+  // property), then the decoders write to image, and the EDT paints
+  // frontImage.  At the end of each framebuffer update, the damaged regions of
+  // image are copied to frontImage, so the EDT never paints a partially-
+  // decoded update, and decoding the next update never has to wait for the
+  // EDT to finish painting.
+  static final boolean DOUBLE_BUFFER =
+    Utils.getBooleanProperty("turbovnc.doublebuffer", false);
+
   public BIPixelBuffer(int w, int h, CConn cc_, DesktopWindow desktop_) {
     super(w, h, cc_, desktop_);
     clip = new Rectangle();
@@ -76,23 +86,69 @@ public class BIPixelBuffer extends PlatformPixelBuffer
       data = (Object)((DataBufferUShort)db).getData();
     else
       throw new ErrorException("Unsupported pixel type");
+
+    synchronized (frontLock) {
+      if (DOUBLE_BUFFER) {
+        frontImage = new BufferedImage(cm, wr.createCompatibleWritableRaster(),
+                                       true, null);
+        DataBuffer frontDB = frontImage.getRaster().getDataBuffer();
+        if (frontDB instanceof DataBufferInt)
+          frontData = ((DataBufferInt)frontDB).getData();
+        else if (frontDB instanceof DataBufferByte)
+          frontData = ((DataBufferByte)frontDB).getData();
+        else
+          frontData = ((DataBufferUShort)frontDB).getData();
+      } else {
+        frontImage = image;
+      }
+    }
+  }
+
+  public boolean isDoubleBuffered() { return DOUBLE_BUFFER; }
+
+  public void publish(DamageRegion region) {
+    if (!DOUBLE_BUFFER)
+      return;
+    synchronized (frontLock) {
+      for (int i = 0; i < region.size(); i++) {
+        int x0 = Math.max(region.x(i), 0);
+        int y0 = Math.max(region.y(i), 0);
+        int x1 = Math.min(region.x(i) + region.width(i), width);
+        int y1 = Math.min(region.y(i) + region.height(i), height);
+        if (x1 <= x0)
+          continue;
+        for (int y = y0; y < y1; y++)
+          System.arraycopy(data, y * stride + x0, frontData, y * stride + x0,
+                           x1 - x0);
+      }
+    }
   }
 
+  // The decoders call fillRect(), imageRect(), and copyRect() once per tile,
+  // so these methods operate directly on the image's data array rather than
+  // creating a Graphics2D instance for each call.
+
   public void fillRect(int x, int y, int w, int h, int pix) {
-    Graphics2D graphics = (Graphics2D)image.getGraphics();
-    switch (format.depth) {
-      case 24:
-        graphics.setColor(new Color(pix));
-        graphics.fillRect(x, y, w, h);
-        break;
-      default:
-        Color color = new Color((0xff << 24) | (cm.getRed(pix) << 16) |
-                                (cm.getGreen(pix) << 8) | (cm.getBlue(pix)));
-        graphics.setColor(color);
-        graphics.fillRect(x, y, w, h);
-        break;
+    int x0 = Math.max(x, 0), x1 = Math.min(x + w, width);
+    int y0 = Math.max(y, 0), y1 = Math.min(y + h, height);
+    if (x1 <= x0 || y1 <= y0)
+      return;
+    // With an alpha channel, the pixel must be opaque.
+    if (format.depth == 24 && format.alpha)
+      pix |= 0xff000000;
+    if (data instanceof int[]) {
+      int[] buf = (int[])data;
+      for (int ry = y0; ry < y1; ry++)
+        Arrays.fill(buf, ry * stride + x0, ry * stride + x1, pix);
+    } else if (data instanceof byte[]) {
+      byte[] buf = (byte[])data;
+      for (int ry = y0; ry < y1; ry++)
+        Arrays.fill(buf, ry * stride + x0, ry * stride + x1, (byte)pix);
+    } else {
+      short[] buf = (short[])data;
+      for (int ry = y0; ry < y1; ry++)
+        Arrays.fill(buf, ry * stride + x0, ry * stride + x1, (short)pix);
     }
-    graphics.dispose();
   }
 
   public void imageRect(int x, int y, int w, int h, Object pix) {
@@ -110,30 +166,56 @@ public class BIPixelBuffer extends PlatformPixelBuffer
       clip = null;
       img.flush();
     } else {
-      if (image.getSampleModel().getTransferType() == DataBuffer.TYPE_BYTE) {
-        byte[] bytes = new byte[((int[])pix).length];
-        for (int i = 0; i < bytes.length; i++)
-          bytes[i] = (byte)((int[])pix)[i];
-        pix = bytes;
-      } else if (image.getSampleModel().getTransferType() ==
-                 DataBuffer.TYPE_USHORT) {
-        short[] shorts = new short[((int[])pix).length];
-        for (int i = 0; i < shorts.length; i++)
-          shorts[i] = (short)((int[])pix)[i];
-        pix = shorts;
+      int[] src = (int[])pix;
+      if (data instanceof int[]) {
+        for (int j = 0; j < h; j++)
+          System.arraycopy(src, j * w, data, (y + j) * stride + x, w);
+      } else if (data instanceof byte[]) {
+        byte[] buf = (byte[])data;
+        for (int j = 0, i = 0; j < h; j++) {
+          int d = (y + j) * stride + x;
+          for (int dEnd = d + w; d < dEnd; d++, i++)
+            buf[d] = (byte)src[i];
+        }
+      } else {
+        short[] buf = (short[])data;
+        for (int j = 0, i = 0; j < h; j++) {
+          int d = (y + j) * stride + x;
+          for (int dEnd = d + w; d < dEnd; d++, i++)
+            buf[d] = (short)src[i];
+        }
       }
-      image.getSampleModel().setDataElements(x, y, w, h, pix, db);
     }
   }
 
   public void copyRect(int x, int y, int w, int h, int srcX, int srcY) {
-    Graphics2D graphics = (Graphics2D)image.getGraphics();
-    graphics.copyArea(srcX, srcY, w, h, x - srcX, y - srcY);
-    graphics.dispose();
+    // Clip the destination rectangle so that both it and the source rectangle
+    // are within the image, as Graphics.copyArea() would.
+    int dx = x - srcX, dy = y - srcY;
+    int x0 = Math.max(Math.max(x, 0), dx);
+    int x1 = Math.min(Math.min(x + w, width), width + dx);
+    int y0 = Math.max(Math.max(y, 0), dy);
+    int y1 = Math.min(Math.min(y + h, height), height + dy);
+    if (x1 <= x0 || y1 <= y0)
+      return;
+    w = x1 - x0;
+    // When the source rectangle is above the destination rectangle, copy the
+    // rows from the bottom up so that overlapping rows are not overwritten
+    // before they are copied.  System.arraycopy() handles overlap within a
+    // row.
+    if (dy > 0) {
+      for (int ry = y1 - 1; ry >= y0; ry--)
+        System.arraycopy(data, (ry - dy) * stride + x0 - dx, data,
+                         ry * stride + x0, w);
+    } else {
+      for (int ry = y0; ry < y1; ry++)
+        System.arraycopy(data, (ry - dy) * stride + x0 - dx, data,
+                         ry * stride + x0, w);
+    }
   }
 
   public Image getImage() {
-    return (Image)image;
+    return (Image)frontImage;
   }
 
   public boolean imageUpdate(Image img, int infoflags, int x, int y, int w,
@@ -158,6 +240,9 @@ public class BIPixelBuffer extends PlatformPixelBuffer
 
   BufferedImage image;
   DataBuffer db;
+  // Access to the following must be synchronized on frontLock:
+  BufferedImage frontImage;
+  Object frontData;
   Rectangle clip;
 
   static LogWriter vlog = new LogWriter("BIPixelBuffer");
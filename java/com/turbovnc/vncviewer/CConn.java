@@ -82,6 +82,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     String env = System.getenv("TVNC_PROFILE");
     if (params.profile.get() || (env != null && env.equals("1")))
       alwaysProfile = true;
+    allocChecker = AllocationChecker.create();
     firstUpdate = true;  pendingUpdate = false;  continuousUpdates = false;
     forceNonincremental = true;  supportsSyncFence = false;
     pressedVKeys = new HashMap<Integer, Integer>();
@@ -218,6 +219,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
       reader = new CMsgReader(this, viewer.benchFile);
     } else {
       sock.inStream().setBlockCallback(this);
+      if (Utils.getBooleanProperty("turbovnc.blockingrecv", false))
+        sock.inStream().startReceiveThread(0, true);
+      else if (Utils.getBooleanProperty("turbovnc.recvthread", false))
+        sock.inStream().startReceiveThread(0);
       setShared(params.shared.get());
       menu.updateMenuKey();
       setStreams(sock.inStream(), sock.outStream());
@@ -396,7 +401,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     // help by setting the correct format here.
     assert(pendingPFChange);
     desktop.setServerPF(pendingPF);
-    cp.setPF(pendingPF);
+    setPixelFormat(pendingPF);
     pendingPFChange = false;
 
     try {
@@ -487,6 +492,9 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     pendingUpdate = false;
 
     if (!benchmark) requestNewUpdate();
+
+    if (allocChecker != null)
+      allocChecker.start(reader);
   }
 
   // RFB thread
@@ -494,6 +502,9 @@ public final class CConn extends CConnection implements UserPasswdGetter,
 
     desktop.updateWindow();
 
+    if (allocChecker != null)
+      allocChecker.end(reader);
+
     if (firstUpdate) {
       int width, height;
 
@@ -527,7 +538,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     // activate the new format.
     if (pendingPFChange) {
       desktop.setServerPF(pendingPF);
-      cp.setPF(pendingPF);
+      setPixelFormat(pendingPF);
       pendingPFChange = false;
     }
 
@@ -536,10 +547,13 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     tElapsed = Utils.getTime() - tStart;
 
     if (tElapsed > (double)params.profileInt.get() && !benchmark) {
+      desktop.collectBlitStats();
       if (profileDialog.isVisible()) {
         String str;
         str = String.format("%.3f", updates / tElapsed);
         profileDialog.upsVal.setText(str);
+        str = String.format("%.3f", blits / tElapsed);
+        profileDialog.upsBlitVal.setText(str);
         str = String.format("%.3f", sock.inStream().getBytesRead() / 125000. /
                             tElapsed);
         profileDialog.tpVal.setText(str);
@@ -579,6 +593,8 @@ public final class CConn extends CConnection implements UserPasswdGetter,
 
         str = String.format("%.0f", (double)decodeRect / (double)updates);
         profileDialog.rpuDecodeVal.setText(str);
+        str = String.format("%d", droppedFrames);
+        profileDialog.droppedBlitVal.setText(str);
       }
       if (profileDialog.isVisible() || alwaysProfile) {
         System.out.format("-------------------------------------------------------------------------------\n");
@@ -586,6 +602,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
                           (double)updates / tElapsed,
                           (double)decodePixels / 1000000. / tElapsed,
                           sock.inStream().getBytesRead() / 125000. / tElapsed);
+        System.out.format("Recv:    %.3f bytes copied/byte received\n",
+                          sock.inStream().getBytesRead() > 0 ?
+                            (double)sock.inStream().getBytesCopied() /
+                              sock.inStream().getBytesRead() : 0.0);
         System.out.format("Decode:  %.3f Mpixels,  %.3f Mpixels/sec,  %d rect,\n",
                           (double)decodePixels / 1000000.,
                           (double)decodePixels / 1000000. / tDecode,
@@ -597,8 +617,9 @@ public final class CConn extends CConnection implements UserPasswdGetter,
                           (double)blitPixels / 1000000.,
                           (double)blitPixels / 1000000. / tBlit,
                           blits);
-        System.out.format("         %.0f pixels/update\n",
-                          (double)blitPixels / (double)blits);
+        System.out.format("         %.0f pixels/update,  %.3f updates/sec,  %d dropped\n",
+                          (double)blitPixels / (double)blits,
+                          (double)blits / tElapsed, droppedFrames);
         System.out.format("Time/update:  Recv = %.3f ms,  Decode = %.3f ms,  Blit = %.3f ms\n",
                           sock.inStream().getReadTime() / (double)updates *
                             1000.,
@@ -611,7 +632,9 @@ public final class CConn extends CConnection implements UserPasswdGetter,
       tUpdate = tDecode = tBlit = 0.0;
       sock.inStream().resetReadTime();
       sock.inStream().resetBytesRead();
+      sock.inStream().resetBytesCopied();
       decodePixels = decodeRect = blitPixels = blits = updates = 0;
+      droppedFrames = 0;
       tStart = Utils.getTime();
     }
   }
@@ -811,6 +834,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     desktop.releaseRawPixels(r);
   }
 
+  public int getJPEGScalingDenom() {
+    return desktop.jpegScalingDenom;
+  }
+
   // RFB thread
   public void setCursor(int width, int height, Point hotspot,
                         int[] data, byte[] mask) {
@@ -855,7 +882,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
         pf.alpha = true;
 
       desktop.setServerPF(pf);
-      cp.setPF(pf);
+      setPixelFormat(pf);
     }
   }
 
@@ -977,7 +1004,25 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     }
 
     e.print();
-    writer().writeGIIEvent(dev, e);
+    writeGIIEvent(dev, e);
+  }
+
+  // Helper thread or EDT: GII events are written directly rather than being
+  // queued, so any queued pointer and key events (including a coalesced
+  // motion event) are written first, in the same batch, in order to preserve
+  // the order of the events.
+  void writeGIIEvent(ExtInputDevice dev, ExtInputEvent e) {
+    CMsgWriter writer = writer();
+    synchronized (writer) {
+      writer.startBatch();
+      try {
+        if (inputSender != null)
+          inputSender.writePending(writer, true);
+        writer.writeGIIEvent(dev, e);
+      } finally {
+        writer.endBatch();
+      }
+    }
   }
 
   // RFB thread
@@ -1566,8 +1611,23 @@ public final class CConn extends CConnection implements UserPasswdGetter,
   }
 
   // RFB thread: requestNewUpdate() requests an update from the server, having
-  // set the format and encoding appropriately.
+  // set the format and encoding appropriately.  The messages are sent as a
+  // single batch, along with any queued input events.
   private void requestNewUpdate() {
+    CMsgWriter writer = writer();
+    synchronized (writer) {
+      writer.startBatch();
+      try {
+        if (inputSender != null)
+          inputSender.writePending(writer);
+        writeUpdateRequest();
+      } finally {
+        writer.endBatch();
+      }
+    }
+  }
+
+  private void writeUpdateRequest() {
     if (formatChange) {
       PixelFormat pf;
 
@@ -1664,6 +1724,16 @@ public final class CConn extends CConnection implements UserPasswdGetter,
       timer = null;
     }
     deleteWindow(disposeViewport);
+    // Send the key release events that deleteWindow() queued before the
+    // socket is shut down.
+    if (inputSender != null) {
+      try {
+        inputSender.flush();
+      } catch (Exception e) {
+        vlog.error("Error writing input events:");
+        vlog.error("  " + e.toString());
+      }
+    }
     shuttingDown = true;
     if (sock != null)
       sock.shutdown();
@@ -1677,6 +1747,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     }
     if (reader != null)
       reader.close();
+    if (desktop != null)
+      desktop.stopPresenter();
+    if (inputSender != null)
+      inputSender.stop();
   }
 
   public void closeSocket() {
@@ -2151,6 +2225,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
   public void writeKeyEvent(int keysym, int rfbKeyCode, boolean down) {
     if (state() != RFBSTATE_NORMAL || shuttingDown || benchmark)
       return;
+    if (inputSender != null) {
+      inputSender.keyEvent(keysym, rfbKeyCode, down);
+      return;
+    }
     try {
       writer().writeKeyEvent(keysym, rfbKeyCode, down);
     } catch (Exception e) {
@@ -3001,6 +3079,10 @@ public final class CConn extends CConnection implements UserPasswdGetter,
       ev.translatePoint(-dx, -dy);
     }
 
+    if (inputSender != null) {
+      inputSender.pointerEvent(ev.getX(), ev.getY(), buttonMask);
+      return;
+    }
     try {
       writer().writePointerEvent(new Point(ev.getX(), ev.getY()), buttonMask);
     } catch (Exception e) {
@@ -3054,6 +3136,11 @@ public final class CConn extends CConnection implements UserPasswdGetter,
     for (int i = 0; i < Math.abs(clicks); i++) {
       x = ev.getX();
       y = ev.getY();
+      if (inputSender != null) {
+        inputSender.pointerEvent(x, y, wheelMask);
+        inputSender.pointerEvent(x, y, buttonMask);
+        continue;
+      }
       try {
         writer().writePointerEvent(new Point(x, y), wheelMask);
         writer().writePointerEvent(new Point(x, y), buttonMask);
@@ -3104,7 +3191,9 @@ public final class CConn extends CConnection implements UserPasswdGetter,
 
   // shuttingDown is set in the EDT and is only ever tested by the RFB thread
   // after the window has been destroyed.
-  boolean shuttingDown = false;
+  volatile boolean shuttingDown = false;
+  final InputSender inputSender =
+    InputSender.ENABLED ? new InputSender(this) : null;
 
   // All menu, options, about and info stuff is done in the EDT (apart from
   // initial construction.)
@@ -3156,6 +3245,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
 
   double tDecode, tBlit;
   long decodePixels, decodeRect, blitPixels, blits;
+  long droppedFrames;
   double tDecodeStart, tReadOld;
   boolean benchmark;
 
@@ -3164,5 +3254,7 @@ public final class CConn extends CConnection implements UserPasswdGetter,
   ProfileDialog profileDialog;
   boolean alwaysProfile;
 
+  AllocationChecker allocChecker;
+
   static LogWriter vlog = new LogWriter("CConn");
 }
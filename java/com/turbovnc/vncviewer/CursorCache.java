@@ -0,0 +1,205 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// CursorCache
+//
+// Converting a cursor shape from the server into an AWT cursor requires
+// creating and scaling an image, which is expensive.  Applications that
+// animate the cursor (busy spinners, for instance) repeatedly send the same
+// few cursor shapes, so CursorCache keeps the most recently used cursors,
+// keyed by the contents of the cursor shape and the scaling factor.  If the
+// pixel format of the cursor shapes changes, then the cache is cleared.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+
+import com.turbovnc.rfb.*;
+import com.turbovnc.rfb.Point;
+
+final class CursorCache {
+
+  static final int MAX_ENTRIES = 32;
+
+  static final class Entry {
+    // The cursor image (in the default RGB color model, with fully
+    // transparent pixels where the mask is clear) and the cursor mask
+    final int[] pixels;
+    final byte[] mask;
+    // null if the platform does not support custom cursors
+    final java.awt.Cursor cursor;
+
+    Entry(int[] pixels, byte[] mask, java.awt.Cursor cursor) {
+      this.pixels = pixels;
+      this.mask = mask;
+      this.cursor = cursor;
+    }
+  }
+
+  // Returns the prepared cursor for the given cursor shape (with pixels in the
+  // given pixel format and color model) and scaling factor, creating it if it
+  // is not in the cache.
+  synchronized Entry get(PixelFormat pf, ColorModel cm, int w, int h,
+                         Point hotspot, int[] data, byte[] mask,
+                         float scaleX, float scaleY) {
+    if (lastPF == null || !pf.equal(lastPF)) {
+      cache.clear();
+      lastPF = new PixelFormat(pf.bpp, pf.depth, pf.bigEndian, pf.trueColour,
+                               pf.redMax, pf.greenMax, pf.blueMax,
+                               pf.redShift, pf.greenShift, pf.blueShift);
+      initLUTs(pf, cm);
+    }
+    Key key = new Key(w, h, hotspot, data, mask, scaleX, scaleY);
+    Entry entry = cache.get(key);
+    if (entry == null) {
+      entry = create(key);
+      cache.put(key, entry);
+    }
+    return entry;
+  }
+
+  // Build lookup tables that convert each component of a pixel to 8 bits.
+  // The component masks and the lookup tables are obtained from the color
+  // model, so the results are the same as those of ColorModel.getRed(), etc.
+  private void initLUTs(PixelFormat pf, ColorModel cm) {
+    if (!pf.trueColour || !(cm instanceof DirectColorModel)) {
+      lut = null;
+      return;
+    }
+    DirectColorModel dcm = (DirectColorModel)cm;
+    int[] masks = { dcm.getRedMask(), dcm.getGreenMask(), dcm.getBlueMask() };
+    int[] max = new int[3], shift = new int[3];
+    lut = new int[3][];
+    for (int c = 0; c < 3; c++) {
+      shift[c] = Integer.numberOfTrailingZeros(masks[c]);
+      max[c] = masks[c] >>> shift[c];
+      lut[c] = new int[max[c] + 1];
+      for (int v = 0; v <= max[c]; v++) {
+        int pixel = v << shift[c];
+        lut[c][v] = c == 0 ? cm.getRed(pixel) :
+                    (c == 1 ? cm.getGreen(pixel) : cm.getBlue(pixel));
+      }
+    }
+    this.max = max;
+    this.shift = shift;
+  }
+
+  private Entry create(Key key) {
+    int w = key.w, h = key.h;
+    int maskBytesPerRow = (w + 7) / 8;
+    int[] pixels = new int[w * h];
+    for (int y = 0; y < h; y++) {
+      int maskPtr = y * maskBytesPerRow;
+      for (int x = 0, i = y * w; x < w; x++, i++) {
+        if ((key.mask[maskPtr + x / 8] & (0x80 >> (x % 8))) == 0)
+          continue;
+        int pix = key.data[i];
+        if (lut != null)
+          pixels[i] = 0xff000000 | lut[0][(pix >>> shift[0]) & max[0]] << 16 |
+                      lut[1][(pix >>> shift[1]) & max[1]] << 8 |
+                      lut[2][(pix >>> shift[2]) & max[2]];
+        else
+          pixels[i] = 0xff000000;
+      }
+    }
+
+    Toolkit tk = Toolkit.getDefaultToolkit();
+    int cw = (int)Math.floor((float)w * key.scaleX);
+    int ch = (int)Math.floor((float)h * key.scaleY);
+    Dimension bestSize = tk.getBestCursorSize(cw, ch);
+    java.awt.Cursor cursor = null;
+    if (!bestSize.equals(new Dimension(0, 0))) {
+      BufferedImage srcImage =
+        new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+      System.arraycopy(pixels, 0,
+        ((DataBufferInt)srcImage.getRaster().getDataBuffer()).getData(), 0,
+        w * h);
+      BufferedImage cursorImage =
+        new BufferedImage(bestSize.width, bestSize.height,
+                          BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2 = cursorImage.createGraphics();
+      g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                          RenderingHints.VALUE_RENDER_SPEED);
+      g2.drawImage(srcImage, 0, 0, Math.min(cw, bestSize.width),
+                   Math.min(ch, bestSize.height), 0, 0, w, h, null);
+      g2.dispose();
+      srcImage.flush();
+
+      int x = (int)Math.floor((float)key.hotspotX * key.scaleX);
+      int y = (int)Math.floor((float)key.hotspotY * key.scaleY);
+      x = Math.min(x, Math.max(bestSize.width - 1, 0));
+      y = Math.min(y, Math.max(bestSize.height - 1, 0));
+      cursor = tk.createCustomCursor(cursorImage, new java.awt.Point(x, y),
+                                     "softCursor");
+      cursorImage.flush();
+    }
+    return new Entry(pixels, key.mask, cursor);
+  }
+
+  private static final class Key {
+    Key(int w, int h, Point hotspot, int[] data, byte[] mask, float scaleX,
+        float scaleY) {
+      this.w = w;  this.h = h;
+      hotspotX = hotspot.x;  hotspotY = hotspot.y;
+      this.data = Arrays.copyOf(data, w * h);
+      this.mask = Arrays.copyOf(mask, (w + 7) / 8 * h);
+      this.scaleX = scaleX;  this.scaleY = scaleY;
+      int hash = w;
+      hash = hash * 31 + h;
+      hash = hash * 31 + hotspotX;
+      hash = hash * 31 + hotspotY;
+      hash = hash * 31 + Float.floatToIntBits(scaleX);
+      hash = hash * 31 + Float.floatToIntBits(scaleY);
+      hash = hash * 31 + Arrays.hashCode(this.data);
+      hash = hash * 31 + Arrays.hashCode(this.mask);
+      this.hash = hash;
+    }
+
+    public int hashCode() { return hash; }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key))
+        return false;
+      Key k = (Key)o;
+      return hash == k.hash && w == k.w && h == k.h &&
+             hotspotX == k.hotspotX && hotspotY == k.hotspotY &&
+             scaleX == k.scaleX && scaleY == k.scaleY &&
+             Arrays.equals(data, k.data) && Arrays.equals(mask, k.mask);
+    }
+
+    final int w, h, hotspotX, hotspotY;
+    final int[] data;
+    final byte[] mask;
+    final float scaleX, scaleY;
+    private final int hash;
+  }
+
+  @SuppressWarnings("serial")
+  private final LinkedHashMap<Key, Entry> cache =
+    new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  private PixelFormat lastPF;
+  private int[][] lut;
+  private int[] max, shift;
+}
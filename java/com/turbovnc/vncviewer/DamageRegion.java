@@ -0,0 +1,174 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// DamageRegion
+//
+// Represents the parts of the framebuffer that have changed since the last
+// blit, as a short list of rectangles.  Adding a rectangle merges it with an
+// existing rectangle only if the bounding box of the two wastes no more than
+// a few pixels (so that a small change in one corner of the screen and a
+// small change in the opposite corner are blitted separately, rather than
+// blitting nearly the whole framebuffer), and the number of rectangles is
+// capped so that the cost of blitting them stays bounded.  Rectangles in the
+// list may overlap.
+
+package com.turbovnc.vncviewer;
+
+final class DamageRegion {
+
+  // Maximum number of rectangles in the region.  Once this is reached, the
+  // two rectangles whose bounding box wastes the fewest pixels are merged.
+  static final int MAX_RECTS = 16;
+
+  // The approximate per-blit overhead, in pixels.  Two rectangles are merged
+  // if doing so blits fewer extra pixels than this, or if the extra pixels
+  // are less than 1/8 of the merged rectangle.
+  static final int RECT_COST = 64 * 64;
+
+  boolean isEmpty() { return count == 0; }
+
+  int size() { return count; }
+
+  int x(int i) { return x1[i]; }
+
+  int y(int i) { return y1[i]; }
+
+  int width(int i) { return x2[i] - x1[i]; }
+
+  int height(int i) { return y2[i] - y1[i]; }
+
+  // Sum of the areas of all rectangles in the region, i.e. the number of
+  // pixels that will be blitted
+  long area() {
+    long area = 0;
+    for (int i = 0; i < count; i++)
+      area += (long)(x2[i] - x1[i]) * (y2[i] - y1[i]);
+    return area;
+  }
+
+  void clear() { count = 0; }
+
+  // Returns true if any rectangle in the region overlaps the given rectangle
+  boolean intersects(int x, int y, int w, int h) {
+    for (int i = 0; i < count; i++) {
+      if (x < x2[i] && y < y2[i] && x + w > x1[i] && y + h > y1[i])
+        return true;
+    }
+    return false;
+  }
+
+  void add(int x, int y, int w, int h) {
+    if (w <= 0 || h <= 0)
+      return;
+    int nx1 = x, ny1 = y, nx2 = x + w, ny2 = y + h;
+
+    while (true) {
+      int best = -1;
+      long bestWaste = Long.MAX_VALUE;
+
+      for (int i = 0; i < count; i++) {
+        // The new rectangle is already covered.
+        if (nx1 >= x1[i] && ny1 >= y1[i] && nx2 <= x2[i] && ny2 <= y2[i])
+          return;
+        long waste = waste(i, nx1, ny1, nx2, ny2);
+        if (waste < bestWaste) {
+          bestWaste = waste;  best = i;
+        }
+      }
+
+      if (best < 0 ||
+          !worthMerging(bestWaste, best, nx1, ny1, nx2, ny2)) {
+        if (count == MAX_RECTS)
+          mergeCheapestPair();
+        x1[count] = nx1;  y1[count] = ny1;
+        x2[count] = nx2;  y2[count] = ny2;
+        count++;
+        return;
+      }
+
+      // Replace the new rectangle with the bounding box of it and the best
+      // match, and try again, since the bounding box may now be worth merging
+      // with other rectangles.
+      nx1 = Math.min(nx1, x1[best]);  ny1 = Math.min(ny1, y1[best]);
+      nx2 = Math.max(nx2, x2[best]);  ny2 = Math.max(ny2, y2[best]);
+      remove(best);
+    }
+  }
+
+  void set(DamageRegion r) {
+    count = r.count;
+    System.arraycopy(r.x1, 0, x1, 0, count);
+    System.arraycopy(r.y1, 0, y1, 0, count);
+    System.arraycopy(r.x2, 0, x2, 0, count);
+    System.arraycopy(r.y2, 0, y2, 0, count);
+  }
+
+  void add(DamageRegion r) {
+    for (int i = 0; i < r.count; i++)
+      add(r.x1[i], r.y1[i], r.x2[i] - r.x1[i], r.y2[i] - r.y1[i]);
+  }
+
+  // Number of pixels in the bounding box of rectangle i and the given
+  // rectangle that are in neither rectangle
+  private long waste(int i, int nx1, int ny1, int nx2, int ny2) {
+    long union = (long)(Math.max(nx2, x2[i]) - Math.min(nx1, x1[i])) *
+                 (Math.max(ny2, y2[i]) - Math.min(ny1, y1[i]));
+    long ix = Math.min(nx2, x2[i]) - Math.max(nx1, x1[i]);
+    long iy = Math.min(ny2, y2[i]) - Math.max(ny1, y1[i]);
+    long overlap = (ix > 0 && iy > 0) ? ix * iy : 0;
+    return union - (long)(nx2 - nx1) * (ny2 - ny1) -
+           (long)(x2[i] - x1[i]) * (y2[i] - y1[i]) + overlap;
+  }
+
+  private boolean worthMerging(long waste, int i, int nx1, int ny1, int nx2,
+                               int ny2) {
+    if (waste <= RECT_COST)
+      return true;
+    long union = (long)(Math.max(nx2, x2[i]) - Math.min(nx1, x1[i])) *
+                 (Math.max(ny2, y2[i]) - Math.min(ny1, y1[i]));
+    return waste * 8 <= union;
+  }
+
+  private void mergeCheapestPair() {
+    int bestI = 0, bestJ = 1;
+    long bestWaste = Long.MAX_VALUE;
+    for (int i = 0; i < count - 1; i++) {
+      for (int j = i + 1; j < count; j++) {
+        long waste = waste(i, x1[j], y1[j], x2[j], y2[j]);
+        if (waste < bestWaste) {
+          bestWaste = waste;  bestI = i;  bestJ = j;
+        }
+      }
+    }
+    x1[bestI] = Math.min(x1[bestI], x1[bestJ]);
+    y1[bestI] = Math.min(y1[bestI], y1[bestJ]);
+    x2[bestI] = Math.max(x2[bestI], x2[bestJ]);
+    y2[bestI] = Math.max(y2[bestI], y2[bestJ]);
+    remove(bestJ);
+  }
+
+  private void remove(int i) {
+    count--;
+    x1[i] = x1[count];  y1[i] = y1[count];
+    x2[i] = x2[count];  y2[i] = y2[count];
+  }
+
+  private final int[] x1 = new int[MAX_RECTS], y1 = new int[MAX_RECTS];
+  private final int[] x2 = new int[MAX_RECTS], y2 = new int[MAX_RECTS];
+  private int count;
+}
@@ -54,6 +54,9 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   private static final int BUMP_SCROLL_PIXELS = 16;
   private static final int BUMP_SCROLL_MS = 17;
 
+  static final boolean SCALED_JPEG =
+    Utils.getBooleanProperty("turbovnc.scaledjpeg", false);
+
   // RFB thread
   DesktopWindow(int width, int height, PixelFormat serverPF, CConn cc_) {
     cc = cc_;
@@ -73,7 +76,13 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     } else {
       vlog.debug("GraphicsDevice does not support HW acceleration.");
     }
-    im = new BIPixelBuffer(width, height, cc, this);
+    im = PlatformPixelBuffer.create(width, height, cc, this);
+    // When benchmarking, we paint synchronously so that the blit time is
+    // included in the benchmark results.
+    if (cc.viewer.benchFile == null)
+      presenter = new Presenter(this);
+    if (ScreenCopier.ENABLED && presenter != null && im.isDoubleBuffered())
+      screenCopier = new ScreenCopier();
 
     cursor = new Cursor();
     cursorBacking = new ManagedPixelBuffer();
@@ -175,58 +184,24 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     cursor.setSize(w, h);
     PixelFormat cursorPF = getPF();
     cursorPF.alphaPreMultiplied = false;
-    cursor.setPF(cursorPF);
+    // Creating a color model is expensive, so avoid it if the pixel format
+    // hasn't changed.
+    if (!cursorPF.equal(cursor.getPF()) ||
+        cursorPF.alpha != cursor.getPF().alpha)
+      cursor.setPF(cursorPF);
 
     cursorBacking.setSize(cursor.width(), cursor.height());
-    cursorBacking.setPF(cursorPF);
-
-    cursor.data = (Object)(new int[cursor.width() * cursor.height()]);
-    cursor.mask = new byte[cursor.maskLen()];
-
-    int maskBytesPerRow = (w + 7) / 8;
-    for (int y = 0; y < h; y++) {
-      for (int x = 0; x < w; x++) {
-        int _byte = y * maskBytesPerRow + x / 8;
-        int bit = 7 - x % 8;
-        if ((mask[_byte] & (1 << bit)) > 0) {
-          ((int[])cursor.data)[y * cursor.width() + x] = (0xff << 24) |
-            (cursor.cm.getRed(data[y * w + x]) << 16) |
-            (cursor.cm.getGreen(data[y * w + x]) << 8) |
-            (cursor.cm.getBlue(data[y * w + x]));
-        }
-      }
-      System.arraycopy(mask, y * maskBytesPerRow, cursor.mask,
-        y * ((cursor.width() + 7) / 8), maskBytesPerRow);
-    }
-
-    MemoryImageSource cursorSrc =
-      new MemoryImageSource(cursor.width(), cursor.height(),
-                            ColorModel.getRGBdefault(), (int[])cursor.data, 0,
-                            cursor.width());
-    int cw = (int)Math.floor((float)cursor.width() * scaleWidthRatio);
-    int ch = (int)Math.floor((float)cursor.height() * scaleHeightRatio);
-    Dimension bestSize = tk.getBestCursorSize(cw, ch);
-    Image srcImage = tk.createImage(cursorSrc);
-    BufferedImage cursorImage =
-      new BufferedImage(bestSize.width, bestSize.height,
-                        BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2 = cursorImage.createGraphics();
-    g2.setRenderingHint(RenderingHints.KEY_RENDERING,
-                        RenderingHints.VALUE_RENDER_SPEED);
-    g2.drawImage(srcImage, 0, 0, Math.min(cw, bestSize.width),
-                 Math.min(ch, bestSize.height), 0, 0, cursor.width(),
-                 cursor.height(), null);
-    g2.dispose();
-    srcImage.flush();
-
-    int x = (int)Math.floor((float)hotspot.x * scaleWidthRatio);
-    int y = (int)Math.floor((float)hotspot.y * scaleHeightRatio);
-    x = Math.min(x, Math.max(bestSize.width - 1, 0));
-    y = Math.min(y, Math.max(bestSize.height - 1, 0));
-    java.awt.Point hs = new java.awt.Point(x, y);
-    if (!bestSize.equals(new Dimension(0, 0)))
-      softCursor = tk.createCustomCursor(cursorImage, hs, "softCursor");
-    cursorImage.flush();
+    if (!cursorPF.equal(cursorBacking.getPF()) ||
+        cursorPF.alpha != cursorBacking.getPF().alpha)
+      cursorBacking.setPF(cursorPF);
+
+    CursorCache.Entry entry =
+      cursorCache.get(cursorPF, cursor.cm, w, h, hotspot, data, mask,
+                      scaleWidthRatio, scaleHeightRatio);
+    cursor.data = (Object)entry.pixels;
+    cursor.mask = entry.mask;
+    if (entry.cursor != null)
+      softCursor = entry.cursor;
 
     if (softCursor != null) {
       setCursor(softCursor);
@@ -273,68 +248,103 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   // RFB thread: Update the actual window with the changed parts of the
   // framebuffer.
   public void updateWindow() {
-    double tBlitStart = Utils.getTime();
-    Rect r = damage;
-    cc.blitPixels += r.width() * r.height();
-    if (!r.isEmpty()) {
-      if (cc.cp.width != scaledWidth || cc.cp.height != scaledHeight) {
-        int x = (int)Math.floor(r.tl.x * scaleWidthRatio);
-        int y = (int)Math.floor(r.tl.y * scaleHeightRatio);
+    if (damage.isEmpty() && (screenCopier == null || screenCopier.isEmpty()))
+      return;
+    if (screenCopier != null)
+      screenCopier.publish(im, damage);
+    else
+      im.publish(damage);
+    if (presenter != null) {
+      // The presenter thread collects the blit statistics.
+      presenter.present(damage);
+    } else {
+      double tBlitStart = Utils.getTime();
+      cc.blitPixels += damage.area();
+      paintRegion(damage);
+      cc.tBlit += Utils.getTime() - tBlitStart;
+      cc.blits += 1;
+    }
+    damage.clear();
+  }
+
+  // RFB thread
+  void collectBlitStats() {
+    if (presenter != null)
+      presenter.collectStats(cc);
+  }
+
+  void stopPresenter() {
+    if (presenter != null)
+      presenter.stop();
+  }
+
+  // EDT, or the RFB thread when benchmarking
+  void paintRegion(DamageRegion region) {
+    // frontLock is held while painting so that the screen copier's record of
+    // which parts of the screen are out of date remains accurate.
+    synchronized (im.frontLock) {
+      paintRegionLocked(region);
+    }
+  }
+
+  private void paintRegionLocked(DamageRegion region) {
+    boolean scaled = cc.cp.width != scaledWidth ||
+                     cc.cp.height != scaledHeight;
+    // We don't actually need Java 2D to double-buffer the viewport, because
+    // we're taking care of that ourselves.  This improves performance on a
+    // lot of systems and allows the viewer to achieve optimal performance
+    // under X11 without requiring MIT-SHM pixmaps.
+    Window activeWindow =
+      javax.swing.FocusManager.getCurrentManager().getActiveWindow();
+    boolean direct = !swingDB &&
+      (activeWindow == null || activeWindow instanceof Viewport ||
+       (activeWindow instanceof JDialog &&
+        ((JDialog)activeWindow).getTitle().equals(
+          "TurboVNC profiling information")));
+    if (screenCopier != null) {
+      int dx = 0, dy = 0;
+      if (cc.viewport != null) {
+        dx = Math.max(cc.viewport.dx, 0);
+        dy = Math.max(cc.viewport.dy, 0);
+      }
+      region = screenCopier.apply(this, dx, dy,
+                                  direct && !scaled &&
+                                  activeWindow instanceof Viewport, region);
+    }
+    if (scaled && scaledBuffer != null)
+      scaledBuffer.damage(region);
+    for (int i = 0; i < region.size(); i++) {
+      int x, y, width, height;
+      if (scaled) {
+        x = (int)Math.floor(region.x(i) * scaleWidthRatio);
+        y = (int)Math.floor(region.y(i) * scaleHeightRatio);
         // Need one extra pixel to account for rounding.
-        int width = (int)Math.ceil(r.width() * scaleWidthRatio) + 1;
-        int height = (int)Math.ceil(r.height() * scaleHeightRatio) + 1;
-        if (cc.viewport != null) {
-          if (cc.viewport.dx > 0)
-            x += cc.viewport.dx;
-          if (cc.viewport.dy > 0)
-            y += cc.viewport.dy;
+        width = (int)Math.ceil(region.width(i) * scaleWidthRatio) + 1;
+        height = (int)Math.ceil(region.height(i) * scaleHeightRatio) + 1;
+      } else {
+        x = region.x(i);
+        y = region.y(i);
+        width = region.width(i);
+        height = region.height(i);
+      }
+      if (cc.viewport != null) {
+        if (cc.viewport.dx > 0)
+          x += cc.viewport.dx;
+        if (cc.viewport.dy > 0)
+          y += cc.viewport.dy;
+        if (scaled) {
           if (x + width > scaledWidth + cc.viewport.dx)
             width = scaledWidth + cc.viewport.dx - x;
           if (y + height > scaledHeight + cc.viewport.dy)
             height = scaledHeight + cc.viewport.dy - y;
         }
-        // We don't actually need Java 2D to double-buffer the viewport,
-        // because we're taking care of that ourselves.  This improves
-        // performance on a lot of systems and allows the viewer to achieve
-        // optimal performance under X11 without requiring MIT-SHM pixmaps.
-        Window activeWindow =
-          javax.swing.FocusManager.getCurrentManager().getActiveWindow();
-        if (!swingDB &&
-            (activeWindow == null || activeWindow instanceof Viewport ||
-             (activeWindow instanceof JDialog &&
-              ((JDialog)activeWindow).getTitle().equals(
-                "TurboVNC profiling information"))))
-          RepaintManager.currentManager(this).setDoubleBufferingEnabled(false);
-        if (cc.viewer.benchFile != null)
-          paintImmediately(x, y, width, height);
-        else
-          repaint(x, y, width, height);
-      } else {
-        int x = r.tl.x;
-        int y = r.tl.y;
-        if (cc.viewport != null) {
-          if (cc.viewport.dx > 0)
-            x += cc.viewport.dx;
-          if (cc.viewport.dy > 0)
-            y += cc.viewport.dy;
-        }
-        Window activeWindow =
-          javax.swing.FocusManager.getCurrentManager().getActiveWindow();
-        if (!swingDB &&
-            (activeWindow == null || activeWindow instanceof Viewport ||
-             (activeWindow instanceof JDialog &&
-              ((JDialog)activeWindow).getTitle().equals(
-                "TurboVNC profiling information"))))
-          RepaintManager.currentManager(this).setDoubleBufferingEnabled(false);
-        if (cc.viewer.benchFile != null)
-          paintImmediately(x, y, r.width(), r.height());
-        else
-          repaint(x, y, r.width(), r.height());
       }
-      damage.clear();
+      // paintComponent() re-enables double buffering, so this has to be done
+      // for each rectangle.
+      if (direct)
+        RepaintManager.currentManager(this).setDoubleBufferingEnabled(false);
+      paintImmediately(x, y, width, height);
     }
-    cc.tBlit += Utils.getTime() - tBlitStart;
-    cc.blits += 1;
   }
 
   // resize() is called when the desktop has changed size.  See
@@ -345,6 +355,11 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     hideLocalCursor();
     setSize(w, h);
     im.resize(w, h);
+    if (screenCopier != null) {
+      synchronized (im.frontLock) {
+        screenCopier.invalidate();
+      }
+    }
   }
 
   // RFB thread
@@ -370,7 +385,9 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     if (overlapsCursor(x, y, w, h) || overlapsCursor(srcX, srcY, w, h))
       hideLocalCursor();
     im.copyRect(x, y, w, h, srcX, srcY);
-    damageRect(x, y, w, h);
+    if (screenCopier == null ||
+        !screenCopier.add(x, y, w, h, srcX, srcY, damage))
+      damageRect(x, y, w, h);
   }
 
   public final Object getRawPixelsRW(int[] stride) {
@@ -445,6 +462,29 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     }
     scaleWidthRatio = (float)scaledWidth / (float)cc.cp.width;
     scaleHeightRatio = (float)scaledHeight / (float)cc.cp.height;
+    updateJPEGScaling();
+  }
+
+  // If scaled JPEG decompression is enabled, then JPEG images are
+  // decompressed at the smallest scaling factor (1/2, 1/4, or 1/8) that is no
+  // smaller than the display scaling factor.  Since the framebuffer then
+  // contains lower-resolution pixels, a full-resolution refresh is requested
+  // whenever the JPEG scaling factor increases.
+  private void updateJPEGScaling() {
+    int denom = 1;
+    if (SCALED_JPEG) {
+      float ratio = Math.max(scaleWidthRatio, scaleHeightRatio);
+      while (denom < 8 && ratio * (float)(denom * 2) <= 1.0f)
+        denom *= 2;
+    }
+    if (denom != jpegScalingDenom) {
+      vlog.debug("Decompressing JPEG images at 1/" + denom + " scale");
+      boolean refresh = denom < jpegScalingDenom;
+      jpegScalingDenom = denom;
+      if (refresh && !cc.benchmark &&
+          cc.state() == CConnection.RFBSTATE_NORMAL)
+        cc.refresh();
+    }
   }
 
   // EDT
@@ -478,14 +518,36 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     }
     if (Utils.isWindows() && displayScalingFactor != 1.0)
       g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scalingAlg);
-    if (cc.cp.width != scaledWidth || cc.cp.height != scaledHeight) {
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scalingAlg);
-      g2.drawImage(im.getImage(), 0, 0, scaledWidth, scaledHeight, null);
-    } else {
-      Rectangle r = g.getClipBounds();
-      g2.drawImage(im.getImage(), r.x, r.y, r.x + r.width, r.y + r.height,
-                   r.x, r.y, r.x + r.width, r.y + r.height, null);
+    synchronized (im.frontLock) {
+      if (screenCopier != null)
+        screenCopier.invalidate();
+      Image image = im.getImage();
+      if (cc.cp.width != scaledWidth || cc.cp.height != scaledHeight) {
+        // With high DPI scaling on Windows, drawing the scaled buffer would
+        // scale the remote desktop image twice.
+        if (ScaledBuffer.ENABLED && displayScalingFactor == 1.0) {
+          if (scaledBuffer == null)
+            scaledBuffer = new ScaledBuffer();
+          image = scaledBuffer.getImage(image, im.width(), im.height(),
+                                        scaledWidth, scaledHeight, scalingAlg,
+                                        getGraphicsConfiguration());
+          Rectangle r = g.getClipBounds();
+          g2.drawImage(image, r.x, r.y, r.x + r.width, r.y + r.height,
+                       r.x, r.y, r.x + r.width, r.y + r.height, null);
+        } else {
+          scaledBuffer = null;
+          g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scalingAlg);
+          g2.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        }
+      } else {
+        scaledBuffer = null;
+        Rectangle r = g.getClipBounds();
+        g2.drawImage(image, r.x, r.y, r.x + r.width, r.y + r.height,
+                     r.x, r.y, r.x + r.width, r.y + r.height, null);
+      }
     }
+    if (im.contentsLost())
+      repaint();
     g2.dispose();
     if (!swingDB)
       RepaintManager.currentManager(this).setDoubleBufferingEnabled(true);
@@ -840,11 +902,13 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
     int index = file.getName().lastIndexOf('.');
     String formatName =
       (index > 0 ? file.getName().substring(index + 1) : "");
-    BufferedImage fbImage = (BufferedImage)im.getImage();
-    int width = fbImage.getWidth(), height = fbImage.getHeight();
-    BufferedImage rgbImage =
-      new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    rgbImage.createGraphics().drawImage(fbImage, 0, 0, width, height, null);
+    BufferedImage rgbImage;
+    synchronized (im.frontLock) {
+      Image fbImage = im.getImage();
+      int width = im.width(), height = im.height();
+      rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      rgbImage.createGraphics().drawImage(fbImage, 0, 0, width, height, null);
+    }
     try {
       if (!ImageIO.write(rgbImage, formatName, file)) {
         WarningException we = new WarningException(
@@ -915,15 +979,7 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
 
   // RFB thread
   void damageRect(int x, int y, int w, int h) {
-    if (damage.isEmpty()) {
-      damage.setXYWH(x, y, w, h);
-    } else if (x >= 0 && y >= 0 && w > 0 && h > 0) {
-      int x1 = Math.min(damage.tl.x, x);
-      int y1 = Math.min(damage.tl.y, y);
-      int x2 = Math.max(damage.br.x, x + w);
-      int y2 = Math.max(damage.br.y, y + h);
-      damage.setXYWH(x1, y1, x2 - x1, y2 - y1);
-    }
+    damage.add(x, y, w, h);
   }
 
   // run() is executed by the setColourMapEntriesTimerThread.  It sleeps for
@@ -1028,14 +1084,20 @@ class DesktopWindow extends JPanel implements Runnable, MouseListener,
   ManagedPixelBuffer cursorBacking;
   int cursorBackingX, cursorBackingY;
   java.awt.Cursor softCursor, noCursor;
+  final CursorCache cursorCache = new CursorCache();
   static Toolkit tk = Toolkit.getDefaultToolkit();
   boolean swingDB;
 
   int scaledWidth = 0, scaledHeight = 0;
   float scaleWidthRatio, scaleHeightRatio;
+  // Written by setScaledSize() and read by the decoders on the RFB thread
+  volatile int jpegScalingDenom = 1;
 
   int lastX, lastY, lastScreenX, lastScreenY;  // EDT only
-  Rect damage = new Rect();
+  DamageRegion damage = new DamageRegion();  // RFB thread only
+  Presenter presenter;
+  ScaledBuffer scaledBuffer;  // Protected by im.frontLock
+  ScreenCopier screenCopier;
 
   Timer bumpScrollTimer;
 
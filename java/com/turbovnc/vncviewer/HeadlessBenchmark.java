@@ -0,0 +1,341 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// HeadlessBenchmark
+//
+// Replays a session capture (see the -bench option) through CMsgReader and
+// the decoders into an offscreen pixel buffer, without creating any windows,
+// so that decoding performance can be measured on machines that have no
+// display.  If blitting is enabled, then at the end of each framebuffer
+// update, the damaged regions of the pixel buffer are published and drawn
+// into a second offscreen image, which approximates the cost of copying the
+// pixels to the Java 2D pipeline.  (The cost of transferring the pixels to a
+// real display is not measured.)
+//
+// The results are written in JSON format, either to standard output or to a
+// file.  All times are in seconds, and the read time of the session capture
+// is excluded from all times.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.Locale;
+
+import com.turbovnc.rdr.*;
+import com.turbovnc.rfb.*;
+import com.turbovnc.rfb.Point;
+
+public final class HeadlessBenchmark extends CConnection {
+
+  HeadlessBenchmark(FileInStream benchFile_, int colors_, boolean blit_) {
+    benchFile = benchFile_;
+    colors = colors_;
+    blit = blit_;
+    state = RFBSTATE_INITIALISATION;
+    reader = new CMsgReader(this, benchFile);
+    allocChecker = AllocationChecker.create();
+  }
+
+  // Replay the session capture benchWarmup + benchIter times, and write the
+  // results for the last benchIter runs to jsonFile (or to standard output if
+  // jsonFile is null.)  Returns the exit status.
+  static int run(FileInStream benchFile, String fileName, int benchIter,
+                 int benchWarmup, int colors, boolean blit, String jsonFile) {
+    HeadlessBenchmark bench = new HeadlessBenchmark(benchFile, colors, blit);
+    StringBuilder runs = new StringBuilder();
+    double tAvg = 0.0, tAvgDecode = 0.0, tAvgBlit = 0.0;
+
+    try {
+      for (int i = 0; i < benchIter + benchWarmup; i++) {
+        if (i < benchWarmup)
+          System.err.format("Benchmark warmup run %d\n", i + 1);
+        else
+          System.err.format("Benchmark run %d\n", i + 1 - benchWarmup);
+        double tStart = Utils.getTime();
+        try {
+          while (true)
+            bench.processMsg(true);
+        } catch (EndOfStream e) {}
+        double tTotal = Utils.getTime() - tStart - benchFile.getReadTime();
+        if (i >= benchWarmup) {
+          if (runs.length() > 0)
+            runs.append(",\n");
+          runs.append("    ").append(bench.stats(tTotal));
+          tAvg += tTotal;
+          tAvgDecode += bench.tDecode;
+          tAvgBlit += bench.tBlit;
+        }
+        bench.resetStats();
+        benchFile.reset();
+        benchFile.resetReadTime();
+        bench.reset();
+        System.gc();
+      }
+    } catch (Exception e) {
+      System.err.println("Benchmark failed: " + e.toString());
+      return 1;
+    }
+
+    String json = String.format(Locale.ROOT,
+      "{\n" +
+      "  \"file\": %s,\n" +
+      "  \"width\": %d,\n" +
+      "  \"height\": %d,\n" +
+      "  \"pixelFormat\": %s,\n" +
+      "  \"zlibBackend\": %s,\n" +
+      "  \"blit\": %b,\n" +
+      "  \"doubleBuffer\": %b,\n" +
+      "  \"warmup\": %d,\n" +
+      "  \"iterations\": %d,\n" +
+      "  \"runs\": [\n%s\n  ],\n" +
+      "  \"average\": {\"total\": %f, \"decode\": %f, \"blit\": %f}\n" +
+      "}\n",
+      quote(fileName), bench.cp.width, bench.cp.height,
+      quote(bench.cp.pf().print()), quote(ZlibInflater.getDefaultBackend()),
+      blit, BIPixelBuffer.DOUBLE_BUFFER, benchWarmup, benchIter, runs,
+      tAvg / benchIter, tAvgDecode / benchIter, tAvgBlit / benchIter);
+
+    if (jsonFile == null) {
+      System.out.print(json);
+      System.out.flush();
+    } else {
+      try {
+        Writer w = new OutputStreamWriter(new FileOutputStream(jsonFile),
+                                          "UTF-8");
+        try {
+          w.write(json);
+        } finally {
+          w.close();
+        }
+      } catch (IOException e) {
+        System.err.println("Could not write benchmark results:\n" +
+                           e.getMessage());
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  private String stats(double tTotal) {
+    return String.format(Locale.ROOT,
+      "{\"total\": %f, \"decode\": %f, \"blit\": %f, " +
+      "\"decodePixels\": %d, \"rects\": %d, \"updates\": %d, " +
+      "\"blitPixels\": %d, \"decodeMpixelsPerSec\": %f, " +
+      "\"blitMpixelsPerSec\": %f, \"totalMpixelsPerSec\": %f}",
+      tTotal, tDecode, tBlit, decodePixels, decodeRect, updates, blitPixels,
+      mpixelsPerSec(decodePixels, tDecode), mpixelsPerSec(blitPixels, tBlit),
+      mpixelsPerSec(decodePixels, tTotal));
+  }
+
+  private static double mpixelsPerSec(long pixels, double t) {
+    return t > 0.0 ? (double)pixels / 1000000. / t : 0.0;
+  }
+
+  private static String quote(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\')
+        sb.append('\\').append(c);
+      else if (c < 0x20)
+        sb.append(String.format("\\u%04x", (int)c));
+      else
+        sb.append(c);
+    }
+    return sb.append('"').toString();
+  }
+
+  private void resetStats() {
+    tDecode = tBlit = 0.0;
+    decodePixels = decodeRect = updates = blitPixels = 0;
+  }
+
+  private void reset() {
+    reader.reset();
+    state = RFBSTATE_INITIALISATION;
+  }
+
+  // CConnection callback methods
+
+  public void serverInit() {
+    super.serverInit();
+
+    if (im == null)
+      im = new BIPixelBuffer(cp.width, cp.height, null, null);
+    else
+      im.resize(cp.width, cp.height);
+    // Decode into the same pixel format that the viewer would use when
+    // benchmarking.
+    PixelFormat pf;
+    if (colors == 8)
+      pf = CConn.VERY_LOW_COLOR_PF;
+    else if (colors == 64)
+      pf = CConn.LOW_COLOR_PF;
+    else if (colors == 256)
+      pf = CConn.MEDIUM_COLOR_PF;
+    else if (colors == 32768)
+      pf = CConn.MEDIUMHIGH_COLOR_PF;
+    else if (colors == 65536)
+      pf = CConn.HIGH_COLOR_PF;
+    else
+      pf = im.getNativePF();
+    im.setPF(pf);
+    setPixelFormat(pf);
+    resizeTarget();
+  }
+
+  public void setDesktopSize(int w, int h) {
+    super.setDesktopSize(w, h);
+    resize();
+  }
+
+  public void setExtendedDesktopSize(int reason, int result, int w, int h,
+                                     ScreenSet layout) {
+    super.setExtendedDesktopSize(reason, result, w, h, layout);
+    resize();
+  }
+
+  private void resize() {
+    if (im == null)
+      return;
+    damage.clear();
+    im.resize(cp.width, cp.height);
+    resizeTarget();
+  }
+
+  private void resizeTarget() {
+    if (!blit)
+      return;
+    if (target == null || target.getWidth() != cp.width ||
+        target.getHeight() != cp.height)
+      target = new BufferedImage(cp.width, cp.height,
+                                 BufferedImage.TYPE_INT_RGB);
+  }
+
+  public void framebufferUpdateStart() {
+    if (allocChecker != null)
+      allocChecker.start(reader);
+  }
+
+  public void framebufferUpdateEnd() {
+    boolean draw = blit && !damage.isEmpty();
+    double tBlitStart = 0.0;
+    if (draw) {
+      tBlitStart = Utils.getTime();
+      im.publish(damage);
+    }
+    // Java 2D allocates memory whenever it draws an image, so drawing the
+    // published pixels isn't included in the allocation check.  (Likewise,
+    // the viewer doesn't check the EDT, which paints the published pixels.)
+    if (allocChecker != null)
+      allocChecker.end(reader);
+    if (draw) {
+      synchronized (im.frontLock) {
+        Image image = im.getImage();
+        Graphics2D g2 = target.createGraphics();
+        for (int i = 0; i < damage.size(); i++) {
+          int x = damage.x(i), y = damage.y(i);
+          int x1 = x + damage.width(i), y1 = y + damage.height(i);
+          g2.drawImage(image, x, y, x1, y1, x, y, x1, y1, null);
+        }
+        g2.dispose();
+      }
+      tBlit += Utils.getTime() - tBlitStart;
+      blitPixels += damage.area();
+    }
+    damage.clear();
+    updates++;
+  }
+
+  public void beginRect(Rect r, int encoding) {}
+
+  public void endRect(Rect r, int encoding) {
+    decodePixels += r.width() * r.height();
+    decodeRect++;
+  }
+
+  public void startDecodeTimer() {
+    tDecodeStart = Utils.getTime();
+    tReadOld = benchFile.getReadTime();
+  }
+
+  public void stopDecodeTimer() {
+    double tRead = benchFile.getReadTime();
+    tDecode += Utils.getTime() - tDecodeStart - (tRead - tReadOld);
+  }
+
+  public void setColourMapEntries(int firstColour, int nColours, int[] rgbs) {
+    im.setColourMapEntries(firstColour, nColours, rgbs);
+    im.updateColourMap();
+  }
+
+  public void fillRect(Rect r, int pix) {
+    im.fillRect(r.tl.x, r.tl.y, r.width(), r.height(), pix);
+    damage.add(r.tl.x, r.tl.y, r.width(), r.height());
+  }
+
+  public void imageRect(Rect r, Object pixels) {
+    im.imageRect(r.tl.x, r.tl.y, r.width(), r.height(), pixels);
+    damage.add(r.tl.x, r.tl.y, r.width(), r.height());
+  }
+
+  public void copyRect(Rect r, int srcX, int srcY) {
+    im.copyRect(r.tl.x, r.tl.y, r.width(), r.height(), srcX, srcY);
+    damage.add(r.tl.x, r.tl.y, r.width(), r.height());
+  }
+
+  public Object getRawPixelsRW(int[] stride) {
+    return im.getRawPixelsRW(stride);
+  }
+
+  public void releaseRawPixels(Rect r) {
+    damage.add(r.tl.x, r.tl.y, r.width(), r.height());
+  }
+
+  public PixelFormat getPreferredPF() { return im.getNativePF(); }
+
+  // Messages that do not affect the framebuffer are ignored.
+  public void fence(int flags, int len, byte[] data) {
+    cp.supportsFence = true;
+  }
+  public void handleClipboardAnnounce(boolean available) {}
+  public void handleClipboardData(String data) {}
+  public void handleClipboardRequest() {}
+  public void enableGII() {}
+  public void giiDeviceCreated(int deviceOrigin) {}
+  public void enableQEMUExtKeyEvent() {}
+  public void setLEDState(int state) {}
+  public void enableExtMouseButtons() {}
+  public void setCursor(int width, int height, Point hotspot, int[] data,
+                        byte[] mask) {}
+  public void bell() {}
+  public void serverCutText(String str) {}
+
+  private final FileInStream benchFile;
+  private final int colors;
+  private final boolean blit;
+  private PlatformPixelBuffer im;
+  private BufferedImage target;
+  private final DamageRegion damage = new DamageRegion();
+  private final AllocationChecker allocChecker;
+
+  private double tDecodeStart, tReadOld, tDecode, tBlit;
+  private long decodePixels, decodeRect, updates, blitPixels;
+}
@@ -64,7 +64,7 @@ public final class ImageDrawTest extends JFrame {
       }
 
       width = w;  height = h;
-      im1 = new BIPixelBuffer(width, height, null, null);
+      im1 = PlatformPixelBuffer.create(width, height, null, null);
       if (colors == 8)
         im1.setPF(VERY_LOW_COLOR_PF);
       else if (colors == 64)
@@ -75,7 +75,7 @@ public final class ImageDrawTest extends JFrame {
         im1.setPF(MEDIUMHIGH_COLOR_PF);
       else if (colors == 65536)
         im1.setPF(HIGH_COLOR_PF);
-      im2 = new BIPixelBuffer(width, height, null, null);
+      im2 = PlatformPixelBuffer.create(width, height, null, null);
       if (colors == 8)
         im2.setPF(VERY_LOW_COLOR_PF);
       else if (colors == 64)
@@ -94,7 +94,8 @@ public final class ImageDrawTest extends JFrame {
       return new Dimension(width, height);
     }
 
-    public void initImage(BIPixelBuffer im, int w, int h, int offset) {
+    public void initImage(PlatformPixelBuffer im, int w, int h,
+                          int offset) {
       int i, j;
       PixelFormat pf = im.getPF();
       int[] stride = new int[]{ w };
@@ -122,6 +123,9 @@ public final class ImageDrawTest extends JFrame {
         }
         pf.bufferFromRGB(pixels, 0, 0, stride[0], rgbBuf, w, h);
       }
+      DamageRegion damage = new DamageRegion();
+      damage.add(0, 0, w, h);
+      im.publish(damage);
     }
 
     public void paintComponent(Graphics g) {
@@ -130,9 +134,11 @@ public final class ImageDrawTest extends JFrame {
           RepaintManager.currentManager(this).isDoubleBufferingEnabled())
         super.paintComponent(g);
       Rectangle r = g.getClipBounds();
-      g2.drawImage((iter % 2 == 0 ? im2.getImage() : im1.getImage()), r.x,
-                   r.y, r.x + r.width, r.y + r.height, r.x, r.y, r.x + r.width,
-                   r.y + r.height, null);
+      PlatformPixelBuffer im = (iter % 2 == 0 ? im2 : im1);
+      synchronized (im.frontLock) {
+        g2.drawImage(im.getImage(), r.x, r.y, r.x + r.width, r.y + r.height,
+                     r.x, r.y, r.x + r.width, r.y + r.height, null);
+      }
       g2.dispose();
       if (!swingDB)
         RepaintManager.currentManager(this).setDoubleBufferingEnabled(true);
@@ -165,7 +171,7 @@ public final class ImageDrawTest extends JFrame {
       }
     }
 
-    BIPixelBuffer im1, im2;
+    PlatformPixelBuffer im1, im2;
     byte[] rgbBuf;
     int preferredWidth, preferredHeight, width, height, iter;
     boolean swingDB;
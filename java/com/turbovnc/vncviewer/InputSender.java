@@ -0,0 +1,235 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// InputSender
+//
+// Decouples sending keyboard and pointer events from the EDT.  The EDT adds
+// events to a lock-free queue and returns immediately, so it never waits for
+// the message writer (which may be in use by the RFB thread) or for the
+// network.  The sender thread drains the queue and writes all of the events
+// that it removed from the queue as a batch, with a single flush.  When the
+// RFB thread requests a framebuffer update, it also drains the queue, so that
+// any queued events are sent along with the update request.
+//
+// Consecutive pointer events with the same button mask (pointer motion) are
+// coalesced, so that only the most recent position is sent.  Motion events
+// are coalesced if they are waiting in the queue while the sender thread is
+// writing (for instance, because the network is congested) or if they arrive
+// less than the coalescing interval after the previous motion event was
+// sent.  The coalescing interval (in milliseconds) can be specified using the
+// turbovnc.motioninterval system property.  The default is 0, which sends
+// motion events as soon as possible.  Pointer events that change the button
+// mask and key events are never coalesced or reordered, and any pending
+// motion is sent before them.  Extended input (GII) events are not queued,
+// but CConn.writeGIIEvent() writes all queued events, including any pending
+// motion, before each GII event, so GII events are never reordered with
+// respect to pointer and key events either.
+//
+// The sender thread is used by default.  Setting the turbovnc.inputthread
+// system property to false causes input events to be sent on the EDT, as in
+// previous versions.
+
+package com.turbovnc.vncviewer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import com.turbovnc.rfb.*;
+import com.turbovnc.rfb.Point;
+
+final class InputSender implements Runnable {
+
+  static final boolean ENABLED =
+    Utils.getBooleanProperty("turbovnc.inputthread", true);
+
+  private static final int POINTER = 0;
+  private static final int KEY = 1;
+
+  private static final class Event {
+    Event(int type, int a, int b, int c) {
+      this.type = type;  this.a = a;  this.b = b;  this.c = c;
+    }
+
+    // POINTER: a = X, b = Y, c = button mask
+    // KEY: a = keysym, b = RFB key code, c = 1 if down or 0 if up
+    final int type, a, b, c;
+  }
+
+  InputSender(CConn cc_) {
+    cc = cc_;
+    int interval = Utils.getIntProperty("turbovnc.motioninterval");
+    motionInterval = interval > 0 ? (long)interval * 1000000L : 0;
+  }
+
+  // EDT
+  void pointerEvent(int x, int y, int buttonMask) {
+    add(new Event(POINTER, x, y, buttonMask));
+  }
+
+  // EDT
+  void keyEvent(int keysym, int rfbKeyCode, boolean down) {
+    add(new Event(KEY, keysym, rfbKeyCode, down ? 1 : 0));
+  }
+
+  private void add(Event e) {
+    if (stopped)
+      return;
+    queue.add(e);
+    Thread t = thread;
+    if (t == null) {
+      synchronized (this) {
+        if (thread == null) {
+          thread = new Thread(this, "InputSender");
+          thread.setDaemon(true);
+          thread.start();
+        }
+        t = thread;
+      }
+    }
+    LockSupport.unpark(t);
+  }
+
+  void stop() {
+    stopped = true;
+    Thread t = thread;
+    if (t != null)
+      LockSupport.unpark(t);
+  }
+
+  // EDT: Write all of the queued events, including any coalesced motion
+  // event, on the calling thread.  This is called before the connection is
+  // closed, so that the key release events generated by
+  // CConn.releasePressedKeys() are sent rather than being left in the queue.
+  void flush() {
+    CMsgWriter writer = cc.writer();
+    if (writer == null)
+      return;
+    synchronized (writer) {
+      writer.startBatch();
+      try {
+        writePending(writer, true);
+      } finally {
+        writer.endBatch();
+      }
+    }
+  }
+
+  // Sender thread
+  public void run() {
+    while (!stopped) {
+      long wait;
+      try {
+        CMsgWriter writer = cc.writer();
+        synchronized (writer) {
+          writer.startBatch();
+          try {
+            wait = writePending(writer);
+          } finally {
+            writer.endBatch();
+          }
+        }
+      } catch (Exception e) {
+        if (!cc.shuttingDown) {
+          vlog.error("Error writing input events:");
+          vlog.error("  " + e.toString());
+        }
+        wait = -1;
+      }
+      if (wait > 0)
+        LockSupport.parkNanos(this, wait);
+      else if (wait < 0)
+        LockSupport.park(this);
+    }
+  }
+
+  // Sender thread or RFB thread, with the writer locked: Write the queued
+  // events, coalescing motion events.  This is called by the RFB thread so
+  // that queued events are sent in the same batch as framebuffer update
+  // requests.  Returns the number of nanoseconds until a coalesced motion
+  // event should be sent, 0 if events were written, or -1 if there is nothing
+  // left to send.
+  long writePending(CMsgWriter writer) {
+    return writePending(writer, false);
+  }
+
+  // With the writer locked: If flushMotion is true, then a coalesced motion
+  // event is written immediately rather than after the coalescing interval.
+  long writePending(CMsgWriter writer, boolean flushMotion) {
+    Event e;
+    while ((e = queue.poll()) != null) {
+      if (e.type == POINTER && e.c == lastMask) {
+        motion = e;
+        continue;
+      }
+      if (motion != null) {
+        batch.add(motion);
+        motion = null;
+      }
+      if (e.type == POINTER)
+        lastMask = e.c;
+      batch.add(e);
+    }
+
+    long now = System.nanoTime();
+    if (motion != null &&
+        (flushMotion || now - lastMotionTime >= motionInterval)) {
+      batch.add(motion);
+      motion = null;
+      lastMotionTime = now;
+    }
+    if (motion != null) {
+      // If this is the RFB thread, then make sure that the sender thread
+      // sends the coalesced motion event later.
+      Thread t = thread;
+      if (t != null && Thread.currentThread() != t)
+        LockSupport.unpark(t);
+    }
+    if (batch.isEmpty())
+      return motion != null ? motionInterval - (now - lastMotionTime) : -1;
+
+    try {
+      for (Event b : batch) {
+        if (b.type == POINTER)
+          writer.writePointerEvent(new Point(b.a, b.b), b.c);
+        else
+          writer.writeKeyEvent(b.a, b.b, b.c != 0);
+      }
+    } finally {
+      batch.clear();
+    }
+    return 0;
+  }
+
+  private final CConn cc;
+  private final long motionInterval;
+  private final ConcurrentLinkedQueue<Event> queue =
+    new ConcurrentLinkedQueue<Event>();
+  private volatile Thread thread;
+  private volatile boolean stopped;
+
+  // Access to the following must be synchronized on the writer.
+  private final ArrayList<Event> batch = new ArrayList<Event>();
+  // The most recent motion event that has not been sent
+  private Event motion;
+  // The button mask of the most recent pointer event removed from the queue
+  private int lastMask;
+  private long lastMotionTime;
+
+  static LogWriter vlog = new LogWriter("InputSender");
+}
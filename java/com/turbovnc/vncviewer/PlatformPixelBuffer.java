@@ -41,12 +41,24 @@ public abstract class PlatformPixelBuffer extends PixelBuffer {
     resize(w, h);
   }
 
+  static PlatformPixelBuffer create(int w, int h, CConn cc,
+                                    DesktopWindow desktop) {
+    if (Utils.getBooleanProperty("turbovnc.volatileimage", false))
+      return new VIPixelBuffer(w, h, cc, desktop);
+    return new BIPixelBuffer(w, h, cc, desktop);
+  }
+
   // resize() resizes the image, preserving the image data where possible.
   public abstract void resize(int w, int h);
 
   public PixelFormat getNativePF() {
     PixelFormat pf;
-    cm = tk.getColorModel();
+    // The toolkit has no color model if there is no display (for instance,
+    // when running the headless benchmark.)
+    if (GraphicsEnvironment.isHeadless())
+      cm = ColorModel.getRGBdefault();
+    else
+      cm = tk.getColorModel();
     if (cm.getColorSpace().getType() == java.awt.color.ColorSpace.TYPE_RGB) {
       int depth = ((cm.getPixelSize() > 24) ? 24 : cm.getPixelSize());
       int bpp = (depth > 16 ? 32 : (depth > 8 ? 16 : 8));
@@ -102,8 +114,24 @@ public abstract class PlatformPixelBuffer extends PixelBuffer {
 
   protected static Toolkit tk = Toolkit.getDefaultToolkit();
 
+  // getImage() returns the image that the EDT paints.  If the pixel buffer is
+  // double-buffered, then this is the front buffer, which changes only when
+  // publish() is called.  Otherwise, it is the same image that the decoders
+  // write to.  In either case, frontLock must be held while painting the
+  // image.
   public abstract Image getImage();
 
+  public boolean isDoubleBuffered() { return false; }
+
+  // RFB thread: Copy the given region of the back buffer to the front buffer.
+  public void publish(DamageRegion region) {}
+
+  // EDT: Returns true if the image returned by getImage() lost its contents
+  // while it was being painted, in which case it must be painted again.
+  public boolean contentsLost() { return false; }
+
+  final Object frontLock = new Object();
+
   protected Image image;
 
   int nColours;
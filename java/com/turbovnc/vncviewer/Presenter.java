@@ -0,0 +1,192 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// Presenter
+//
+// Decouples framebuffer presentation from the RFB thread.  When a framebuffer
+// update is complete, the RFB thread merges its damage into a pending region
+// and moves on to the next update.  The presenter thread hands the pending
+// region to the EDT for painting at most once per display refresh interval,
+// and only after the EDT has finished painting the previous frame.  Thus, if
+// the server sends updates faster than they can be displayed, the
+// intermediate frames are dropped (their damage is merged into the next frame
+// that is displayed), and decoding never waits for painting.
+//
+// The refresh rate is read from the display mode of the screen that contains
+// the viewer window, or it can be specified (in Hz) using the
+// turbovnc.refreshrate system property.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import javax.swing.*;
+
+import com.turbovnc.rfb.*;
+
+final class Presenter implements Runnable {
+
+  static final int DEFAULT_REFRESH_RATE = 60;
+
+  // How often to check whether the refresh rate has changed (because, for
+  // instance, the viewer window was moved to a different screen)
+  static final double REFRESH_RATE_CHECK_INTERVAL = 1.0;
+
+  Presenter(DesktopWindow desktop_) {
+    desktop = desktop_;
+    int refreshRate = Utils.getIntProperty("turbovnc.refreshrate");
+    if (refreshRate > 0) {
+      fixedRefreshRate = true;
+      setRefreshRate(refreshRate);
+    } else {
+      setRefreshRate(detectRefreshRate(GraphicsEnvironment
+        .getLocalGraphicsEnvironment().getDefaultScreenDevice()));
+    }
+  }
+
+  // RFB thread
+  synchronized void present(DamageRegion damage) {
+    if (stopped)
+      return;
+    if (thread == null) {
+      thread = new Thread(this, "Presenter");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    pending.add(damage);
+    if (pendingUpdates++ > 0)
+      droppedFrames++;
+    notifyAll();
+  }
+
+  synchronized void stop() {
+    stopped = true;
+    notifyAll();
+  }
+
+  // RFB thread: Add the blit statistics since the last call to the
+  // connection's profiling statistics, and reset them.
+  synchronized void collectStats(CConn cc) {
+    cc.tBlit += tBlit;
+    cc.blitPixels += blitPixels;
+    cc.blits += frames;
+    cc.droppedFrames += droppedFrames;
+    tBlit = 0.0;
+    blitPixels = frames = droppedFrames = 0;
+  }
+
+  // Presenter thread
+  public void run() {
+    long nextFrame = System.nanoTime();
+    try {
+      while (true) {
+        synchronized (this) {
+          while (!stopped && (pendingUpdates == 0 || painting))
+            wait();
+          // Give any updates that arrive before the next refresh interval a
+          // chance to be merged into this frame.
+          long now;
+          while (!stopped && (now = System.nanoTime()) < nextFrame) {
+            long ns = nextFrame - now;
+            wait(ns / 1000000, (int)(ns % 1000000));
+          }
+          if (stopped)
+            return;
+          frame.set(pending);
+          pending.clear();
+          pendingUpdates = 0;
+          painting = true;
+        }
+        // If we fell behind by more than a frame, then start a new frame
+        // sequence rather than trying to catch up.
+        long now = System.nanoTime();
+        nextFrame = Math.max(nextFrame + frameInterval, now);
+        SwingUtilities.invokeLater(paintFrame);
+      }
+    } catch (InterruptedException e) {
+      vlog.debug("Presenter thread interrupted");
+    }
+  }
+
+  // EDT
+  private final Runnable paintFrame = new Runnable() {
+    public void run() {
+      double tStart = Utils.getTime();
+      try {
+        desktop.paintRegion(frame);
+      } finally {
+        double tEnd = Utils.getTime();
+        if (!fixedRefreshRate &&
+            tEnd - tLastRefreshRateCheck > REFRESH_RATE_CHECK_INTERVAL) {
+          tLastRefreshRateCheck = tEnd;
+          GraphicsConfiguration gc = desktop.getGraphicsConfiguration();
+          if (gc != null)
+            setRefreshRate(detectRefreshRate(gc.getDevice()));
+        }
+        synchronized (Presenter.this) {
+          tBlit += tEnd - tStart;
+          blitPixels += frame.area();
+          frames++;
+          painting = false;
+          Presenter.this.notifyAll();
+        }
+      }
+    }
+  };
+
+  private static int detectRefreshRate(GraphicsDevice gd) {
+    try {
+      int refreshRate = gd.getDisplayMode().getRefreshRate();
+      if (refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN && refreshRate > 0)
+        return refreshRate;
+    } catch (Exception e) {
+      vlog.debug("Could not detect display refresh rate: " + e.getMessage());
+    }
+    return DEFAULT_REFRESH_RATE;
+  }
+
+  private void setRefreshRate(int refreshRate) {
+    if (refreshRate == this.refreshRate)
+      return;
+    this.refreshRate = refreshRate;
+    frameInterval = 1000000000L / refreshRate;
+    vlog.debug("Presenting at most " + refreshRate + " frames/sec");
+  }
+
+  private final DesktopWindow desktop;
+  private Thread thread;
+  private boolean stopped, painting;
+
+  // Damage from the updates that have been received since the last frame was
+  // handed to the EDT, and the number of those updates
+  private final DamageRegion pending = new DamageRegion();
+  private int pendingUpdates;
+  // Damage being painted by the EDT.  Only the EDT accesses this while
+  // painting is true, and only the presenter thread accesses it otherwise.
+  private final DamageRegion frame = new DamageRegion();
+
+  private boolean fixedRefreshRate;
+  private volatile int refreshRate;
+  private volatile long frameInterval;
+  private double tLastRefreshRateCheck;  // EDT only
+
+  // Statistics, reset by collectStats()
+  private double tBlit;
+  private long blitPixels, frames, droppedFrames;
+
+  static LogWriter vlog = new LogWriter("Presenter");
+}
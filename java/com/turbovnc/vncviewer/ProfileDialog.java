@@ -55,6 +55,7 @@ class ProfileDialog extends Dialog {
     boldFont = new Font(font.getFontName(), Font.BOLD, font.getSize());
     upsHeading.setFont(boldFont);
     upsVal = new JLabel("000.000");
+    upsBlitVal = new JLabel("000.000");
 
     JLabel tpHeading = new JLabel("Throughput (Mbits/sec):");
     font = tpHeading.getFont();
@@ -106,6 +107,12 @@ class ProfileDialog extends Dialog {
     rpuHeading.setFont(boldFont);
     rpuDecodeVal = new JLabel("0000000");
 
+    JLabel droppedHeading = new JLabel("Dropped updates:");
+    font = droppedHeading.getFont();
+    boldFont = new Font(font.getFontName(), Font.BOLD, font.getSize());
+    droppedHeading.setFont(boldFont);
+    droppedBlitVal = new JLabel("0000000");
+
     Dialog.addGBComponent(recvHeading, panel,
                           1, 0, 1, 1, 0, 0, 0, 0,
                           GridBagConstraints.NONE,
@@ -132,6 +139,11 @@ class ProfileDialog extends Dialog {
                           GridBagConstraints.NONE,
                           GridBagConstraints.LINE_START,
                           new Insets(2, 8, 2, 8));
+    Dialog.addGBComponent(upsBlitVal, panel,
+                          3, 1, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.WEST,
+                          new Insets(2, 8, 2, 8));
     Dialog.addGBComponent(upsVal, panel,
                           4, 1, 1, 1, 0, 0, 0, 0,
                           GridBagConstraints.NONE,
@@ -255,6 +267,17 @@ class ProfileDialog extends Dialog {
                           GridBagConstraints.LINE_START,
                           new Insets(2, 8, 2, 8));
 
+    Dialog.addGBComponent(droppedHeading, panel,
+                          0, 9, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.LINE_START,
+                          new Insets(2, 8, 2, 8));
+    Dialog.addGBComponent(droppedBlitVal, panel,
+                          3, 9, 1, 1, 0, 0, 0, 0,
+                          GridBagConstraints.NONE,
+                          GridBagConstraints.LINE_START,
+                          new Insets(2, 8, 2, 8));
+
     panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
   }
 
@@ -311,9 +334,9 @@ class ProfileDialog extends Dialog {
 
   CConn cc;
   JPanel panel;
-  JLabel upsVal, tpVal;
+  JLabel upsVal, upsBlitVal, tpVal;
   JLabel tpuRecvVal, tpuDecodeVal, tpuBlitVal, tpuTotalVal;
   JLabel mpDecodeVal, mpBlitVal, mpsDecodeVal, mpsBlitVal, mpsTotalVal;
   JLabel rectDecodeVal, rectBlitVal, pprDecodeVal, pprBlitVal;
-  JLabel rpuDecodeVal;
+  JLabel rpuDecodeVal, droppedBlitVal;
 }
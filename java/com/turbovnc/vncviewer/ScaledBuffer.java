@@ -0,0 +1,212 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// ScaledBuffer
+//
+// Holds a copy of the remote desktop image at the scaled size, so that
+// painting a scaled remote desktop image requires only an unscaled blit.  When
+// a framebuffer update is complete, only the damaged regions of the remote
+// desktop image (padded by the radius of the interpolation filter, since each
+// source pixel affects the destination pixels within that radius) are
+// rescaled.  The whole image is rescaled if the scaled size, the
+// interpolation algorithm, or the source image changes.
+//
+// The scaled buffer is used by default when the remote desktop image is
+// scaled.  Setting the turbovnc.scaledbuffer system property to false
+// restores the old behavior of scaling the remote desktop image every time
+// it is painted.
+//
+// By default, Java 2D rescales the damaged regions, using the interpolation
+// algorithm specified by the turbovnc.scalingalg system property.  If the
+// turbovnc.javascaling system property is true and the remote desktop image
+// uses 32-bit pixels, then Scaler rescales the damaged regions instead, using
+// multiple threads.  In that case, turbovnc.scalingalg can also be set to
+// "area" in order to use area averaging when downscaling.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import java.awt.image.*;
+
+import com.turbovnc.rfb.*;
+
+final class ScaledBuffer {
+
+  static final boolean ENABLED =
+    Utils.getBooleanProperty("turbovnc.scaledbuffer", true);
+  static final boolean JAVA_SCALING =
+    Utils.getBooleanProperty("turbovnc.javascaling", false);
+  static final boolean AREA_AVERAGING =
+    "area".equalsIgnoreCase(System.getProperty("turbovnc.scalingalg"));
+
+  // Access to ScaledBuffer must be synchronized on the pixel buffer's
+  // frontLock.
+
+  // Rescale the given region of the source image the next time that getImage()
+  // is called.
+  void damage(DamageRegion region) {
+    if (!valid)
+      return;
+    pending.add(region);
+  }
+
+  // Returns the scaled image, after rescaling any damaged regions of the
+  // source image.
+  Image getImage(Image src, int srcWidth, int srcHeight, int dstWidth,
+                 int dstHeight, Object scalingAlg, GraphicsConfiguration gc) {
+    int[] srcData = JAVA_SCALING ? getIntData(src) : null;
+    if (image == null || image.getWidth() != dstWidth ||
+        image.getHeight() != dstHeight || (srcData != null) != javaScaling ||
+        (javaScaling &&
+         !image.getColorModel().equals(((BufferedImage)src).getColorModel()))) {
+      if (image != null)
+        image.flush();
+      javaScaling = srcData != null;
+      if (javaScaling) {
+        // Scaler writes directly to the scaled image, so its pixel format
+        // must match that of the source image.
+        ColorModel cm = ((BufferedImage)src).getColorModel();
+        image = new BufferedImage(cm,
+          cm.createCompatibleWritableRaster(dstWidth, dstHeight),
+          cm.isAlphaPremultiplied(), null);
+      } else
+        image = gc.createCompatibleImage(dstWidth, dstHeight);
+      valid = false;
+    }
+    if (src != lastSrc || srcWidth != lastSrcWidth ||
+        srcHeight != lastSrcHeight || scalingAlg != lastScalingAlg) {
+      lastSrc = src;
+      lastSrcWidth = srcWidth;
+      lastSrcHeight = srcHeight;
+      lastScalingAlg = scalingAlg;
+      valid = false;
+    }
+    if (javaScaling) {
+      int type = Scaler.BILINEAR;
+      if (AREA_AVERAGING)
+        type = Scaler.AREA;
+      else if (scalingAlg == RenderingHints.VALUE_INTERPOLATION_BICUBIC)
+        type = Scaler.BICUBIC;
+      else if (scalingAlg ==
+               RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)
+        type = Scaler.NEAREST;
+      if (fx == null || fx.srcSize != srcWidth || fx.dstSize != dstWidth ||
+          fy.srcSize != srcHeight || fy.dstSize != dstHeight ||
+          filterType != type) {
+        fx = new Scaler.Filter(srcWidth, dstWidth, type);
+        fy = new Scaler.Filter(srcHeight, dstHeight, type);
+        filterType = type;
+      }
+    }
+
+    if (!valid) {
+      scale(src, srcData, 0, 0, dstWidth, dstHeight, scalingAlg);
+      pending.clear();
+      valid = true;
+    } else if (!pending.isEmpty()) {
+      double sx = (double)dstWidth / srcWidth;
+      double sy = (double)dstHeight / srcHeight;
+      int radius = javaScaling ? Math.max(fx.radius(), fy.radius()) :
+                   filterRadius(scalingAlg);
+      for (int i = 0; i < pending.size(); i++) {
+        int x0 = (int)Math.floor((pending.x(i) - radius) * sx);
+        int y0 = (int)Math.floor((pending.y(i) - radius) * sy);
+        int x1 = (int)Math.ceil((pending.x(i) + pending.width(i) + radius) *
+                                sx);
+        int y1 = (int)Math.ceil((pending.y(i) + pending.height(i) + radius) *
+                                sy);
+        x0 = Math.max(x0, 0);  y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, dstWidth);  y1 = Math.min(y1, dstHeight);
+        if (x1 <= x0 || y1 <= y0)
+          continue;
+        scale(src, srcData, x0, y0, x1, y1, scalingAlg);
+      }
+      pending.clear();
+    }
+    return image;
+  }
+
+  // Rescale the destination rectangle (x0, y0)-(x1, y1).
+  private void scale(Image src, int[] srcData, int x0, int y0, int x1, int y1,
+                     Object scalingAlg) {
+    if (javaScaling) {
+      Scaler.scale(srcData, stride((BufferedImage)src), getIntData(image),
+                   stride(image), fx, fy, x0, y0, x1, y1);
+      return;
+    }
+    Graphics2D g2 = image.createGraphics();
+    g2.setComposite(AlphaComposite.Src);
+    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scalingAlg);
+    // Drawing the whole image with a clip, rather than drawing the
+    // corresponding part of the source image, ensures that each destination
+    // pixel is sampled from the same source coordinates as it would be if the
+    // whole image was rescaled, so there are no seams at the edges of the
+    // rescaled regions.
+    g2.setClip(x0, y0, x1 - x0, y1 - y0);
+    g2.drawImage(src, 0, 0, image.getWidth(), image.getHeight(), null);
+    g2.dispose();
+  }
+
+  // Returns the pixel array of the given image if it has 32-bit pixels with
+  // byte-aligned 8-bit components, or null otherwise
+  private static int[] getIntData(Image img) {
+    if (!(img instanceof BufferedImage))
+      return null;
+    BufferedImage bi = (BufferedImage)img;
+    if (!(bi.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+        !(bi.getRaster().getDataBuffer() instanceof DataBufferInt) ||
+        !(bi.getColorModel() instanceof DirectColorModel))
+      return null;
+    DirectColorModel cm = (DirectColorModel)bi.getColorModel();
+    if (!isByteMask(cm.getRedMask()) || !isByteMask(cm.getGreenMask()) ||
+        !isByteMask(cm.getBlueMask()) || !isByteMask(cm.getAlphaMask()))
+      return null;
+    return ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+  }
+
+  private static boolean isByteMask(int mask) {
+    return mask == 0 || mask == 0xff || mask == 0xff00 || mask == 0xff0000 ||
+           mask == 0xff000000;
+  }
+
+  private static int stride(BufferedImage img) {
+    return ((SinglePixelPackedSampleModel)img.getSampleModel())
+           .getScanlineStride();
+  }
+
+  // The number of source pixels, beyond the edges of a damaged region, that
+  // can affect the destination pixels when the image is rescaled using the
+  // given interpolation algorithm.  This includes an extra pixel to account
+  // for rounding.
+  private static int filterRadius(Object scalingAlg) {
+    if (scalingAlg == RenderingHints.VALUE_INTERPOLATION_BICUBIC)
+      return 3;
+    if (scalingAlg == RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+      return 2;
+    return 1;
+  }
+
+  private BufferedImage image;
+  private boolean valid, javaScaling;
+  private Scaler.Filter fx, fy;
+  private int filterType;
+  private Image lastSrc;
+  private int lastSrcWidth, lastSrcHeight;
+  private Object lastScalingAlg;
+  private final DamageRegion pending = new DamageRegion();
+}
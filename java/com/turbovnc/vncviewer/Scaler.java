@@ -0,0 +1,289 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// Scaler
+//
+// A pure-Java image scaler that operates directly on 32-bit pixels with 8-bit
+// components (which can be in any order) and uses the common fork/join pool
+// to scale horizontal bands of each destination rectangle in parallel.  (The
+// number of threads in the common pool can be specified using the
+// java.util.concurrent.ForkJoinPool.common.parallelism system property.)
+//
+// The scaler is separable.  For each destination column and row, a filter
+// table lists the source columns or rows that contribute to the destination
+// pixel, along with their weights (in 1/4096 units.)  Each destination pixel
+// is computed independently of the others, so rescaling a rectangle produces
+// exactly the same pixels as rescaling the whole image.
+//
+// Supported filters:
+// NEAREST     Nearest neighbor
+// BILINEAR    Bilinear interpolation
+// BICUBIC     Bicubic (Catmull-Rom) interpolation
+// AREA        Area averaging.  Each destination pixel is the average of the
+//             source pixels that it covers, weighted by coverage.  This is
+//             only used when downscaling.  When upscaling, bilinear
+//             interpolation is used instead.
+
+package com.turbovnc.vncviewer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+final class Scaler {
+
+  static final int NEAREST = 0;
+  static final int BILINEAR = 1;
+  static final int BICUBIC = 2;
+  static final int AREA = 3;
+
+  private static final int WEIGHT_BITS = 12;
+  private static final int ONE = 1 << WEIGHT_BITS;
+
+  // Bands smaller than this (in pixels) are not split further.
+  private static final int MIN_BAND_PIXELS = 16384;
+
+  private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+  // Filter table for one dimension
+  static final class Filter {
+
+    Filter(int srcSize, int dstSize, int type) {
+      double scale = (double)srcSize / dstSize;
+      if (type == AREA && scale <= 1.0)
+        type = BILINEAR;
+      this.srcSize = srcSize;
+      this.dstSize = dstSize;
+      this.type = type;
+
+      switch (type) {
+        case NEAREST:   taps = 1;  break;
+        case BILINEAR:  taps = 2;  break;
+        case BICUBIC:   taps = 4;  break;
+        default:        taps = (int)Math.ceil(scale) + 1;
+      }
+      index = new int[dstSize * taps];
+      weight = new int[dstSize * taps];
+
+      for (int d = 0; d < dstSize; d++) {
+        int off = d * taps;
+        // Position of the destination pixel's center in source coordinates,
+        // relative to the center of source pixel 0
+        double center = (d + 0.5) * scale - 0.5;
+        switch (type) {
+          case NEAREST:
+            index[off] = clamp((int)((d + 0.5) * scale));
+            weight[off] = ONE;
+            break;
+          case BILINEAR: {
+            int i0 = (int)Math.floor(center);
+            int w1 = (int)Math.round((center - i0) * ONE);
+            set(off, 0, i0, ONE - w1);
+            set(off, 1, i0 + 1, w1);
+            break;
+          }
+          case BICUBIC: {
+            int i0 = (int)Math.floor(center);
+            double t = center - i0;
+            int sum = 0;
+            for (int k = 0; k < 4; k++) {
+              int w = (int)Math.round(cubic(t - (k - 1)) * ONE);
+              set(off, k, i0 + k - 1, w);
+              sum += w;
+            }
+            // Make the weights sum to exactly ONE, so that flat areas of the
+            // image remain flat.
+            weight[off + (t < 0.5 ? 1 : 2)] += ONE - sum;
+            break;
+          }
+          default: {
+            double start = d * scale, end = start + scale;
+            int i0 = (int)Math.floor(start);
+            int sum = 0, max = 0;
+            for (int k = 0; k < taps; k++) {
+              double overlap = Math.min(end, i0 + k + 1) -
+                               Math.max(start, i0 + k);
+              int w = 0;
+              if (overlap > 0)
+                w = (int)Math.round(overlap / scale * ONE);
+              set(off, k, i0 + k, w);
+              sum += w;
+              if (w > weight[off + max])
+                max = k;
+            }
+            weight[off + max] += ONE - sum;
+          }
+        }
+      }
+    }
+
+    private void set(int off, int k, int i, int w) {
+      index[off + k] = clamp(i);
+      weight[off + k] = w;
+    }
+
+    private int clamp(int i) {
+      return i < 0 ? 0 : (i >= srcSize ? srcSize - 1 : i);
+    }
+
+    // The number of source pixels beyond the edges of a damaged region that
+    // can affect the destination pixels
+    int radius() {
+      return taps / 2 + 1;
+    }
+
+    final int srcSize, dstSize, type, taps;
+    final int[] index, weight;
+  }
+
+  // Catmull-Rom spline (a = -0.5)
+  private static double cubic(double x) {
+    x = Math.abs(x);
+    if (x < 1.0)
+      return (1.5 * x - 2.5) * x * x + 1.0;
+    if (x < 2.0)
+      return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+    return 0.0;
+  }
+
+  // Scale the pixels in the destination rectangle (dx0, dy0)-(dx1, dy1) from
+  // the source image.
+  static void scale(int[] src, int srcStride, int[] dst, int dstStride,
+                    Filter fx, Filter fy, int dx0, int dy0, int dx1,
+                    int dy1) {
+    if (dx1 <= dx0 || dy1 <= dy0)
+      return;
+    Band band = new Band(src, srcStride, dst, dstStride, fx, fy, dx0, dy0,
+                         dx1, dy1);
+    if ((long)(dx1 - dx0) * (dy1 - dy0) <= MIN_BAND_PIXELS)
+      band.compute();
+    else
+      POOL.invoke(band);
+  }
+
+  @SuppressWarnings("serial")
+  private static final class Band extends RecursiveAction {
+
+    Band(int[] src, int srcStride, int[] dst, int dstStride, Filter fx,
+         Filter fy, int x0, int y0, int x1, int y1) {
+      this.src = src;  this.srcStride = srcStride;
+      this.dst = dst;  this.dstStride = dstStride;
+      this.fx = fx;  this.fy = fy;
+      this.x0 = x0;  this.y0 = y0;  this.x1 = x1;  this.y1 = y1;
+    }
+
+    protected void compute() {
+      int rows = y1 - y0;
+      if (rows > 1 && (long)(x1 - x0) * rows > MIN_BAND_PIXELS) {
+        int mid = y0 + rows / 2;
+        invokeAll(new Band(src, srcStride, dst, dstStride, fx, fy, x0, y0,
+                           x1, mid),
+                  new Band(src, srcStride, dst, dstStride, fx, fy, x0, mid,
+                           x1, y1));
+        return;
+      }
+      if (fx.type == NEAREST && fy.type == NEAREST)
+        nearest();
+      else if (fx.type == BILINEAR && fy.type == BILINEAR)
+        bilinear();
+      else
+        filter();
+    }
+
+    private void nearest() {
+      for (int y = y0; y < y1; y++) {
+        int srcRow = fy.index[y] * srcStride;
+        for (int x = x0, d = y * dstStride + x0; x < x1; x++, d++)
+          dst[d] = src[srcRow + fx.index[x]];
+      }
+    }
+
+    // Bilinear interpolation with 8-bit weights, which allows two components
+    // to be interpolated with each multiplication
+    private static final int ROUND = 0x800080;
+
+    private void bilinear() {
+      int[] xIndex = fx.index, xWeight = fx.weight;
+      for (int y = y0; y < y1; y++) {
+        int row0 = fy.index[y * 2] * srcStride;
+        int row1 = fy.index[y * 2 + 1] * srcStride;
+        int wy1 = (fy.weight[y * 2 + 1] + 8) >> 4, wy0 = 256 - wy1;
+        for (int x = x0, d = y * dstStride + x0; x < x1; x++, d++) {
+          int i0 = xIndex[x * 2], i1 = xIndex[x * 2 + 1];
+          int wx1 = (xWeight[x * 2 + 1] + 8) >> 4, wx0 = 256 - wx1;
+          int p00 = src[row0 + i0], p01 = src[row0 + i1];
+          int p10 = src[row1 + i0], p11 = src[row1 + i1];
+          int rb0 = ((p00 & 0xff00ff) * wx0 + (p01 & 0xff00ff) * wx1 +
+                     ROUND) >>> 8 & 0xff00ff;
+          int ag0 = ((p00 >>> 8 & 0xff00ff) * wx0 +
+                     (p01 >>> 8 & 0xff00ff) * wx1 + ROUND) >>> 8 & 0xff00ff;
+          int rb1 = ((p10 & 0xff00ff) * wx0 + (p11 & 0xff00ff) * wx1 +
+                     ROUND) >>> 8 & 0xff00ff;
+          int ag1 = ((p10 >>> 8 & 0xff00ff) * wx0 +
+                     (p11 >>> 8 & 0xff00ff) * wx1 + ROUND) >>> 8 & 0xff00ff;
+          dst[d] = ((rb0 * wy0 + rb1 * wy1 + ROUND) >>> 8 & 0xff00ff) |
+                   ((ag0 * wy0 + ag1 * wy1 + ROUND) & 0xff00ff00);
+        }
+      }
+    }
+
+    private void filter() {
+      int xTaps = fx.taps, yTaps = fy.taps;
+      int[] xIndex = fx.index, xWeight = fx.weight;
+      for (int y = y0; y < y1; y++) {
+        int yOff = y * yTaps;
+        for (int x = x0, d = y * dstStride + x0; x < x1; x++, d++) {
+          int xOff = x * xTaps;
+          long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+          for (int ky = 0; ky < yTaps; ky++) {
+            int wy = fy.weight[yOff + ky];
+            if (wy == 0)
+              continue;
+            int row = fy.index[yOff + ky] * srcStride;
+            int h0 = 0, h1 = 0, h2 = 0, h3 = 0;
+            for (int kx = 0; kx < xTaps; kx++) {
+              int wx = xWeight[xOff + kx];
+              int p = src[row + xIndex[xOff + kx]];
+              h0 += (p & 0xff) * wx;
+              h1 += (p >>> 8 & 0xff) * wx;
+              h2 += (p >>> 16 & 0xff) * wx;
+              h3 += (p >>> 24) * wx;
+            }
+            c0 += (long)h0 * wy;
+            c1 += (long)h1 * wy;
+            c2 += (long)h2 * wy;
+            c3 += (long)h3 * wy;
+          }
+          dst[d] = component(c0) | component(c1) << 8 |
+                   component(c2) << 16 | component(c3) << 24;
+        }
+      }
+    }
+
+    private static int component(long c) {
+      int v = (int)((c + (1L << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS));
+      return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    private final int[] src, dst;
+    private final int srcStride, dstStride;
+    private final Filter fx, fy;
+    private final int x0, y0, x1, y1;
+  }
+
+  private Scaler() {}
+}
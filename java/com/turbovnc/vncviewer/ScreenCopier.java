@@ -0,0 +1,268 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// ScreenCopier
+//
+// When the server sends a CopyRect (for instance, because a window was
+// scrolled), the CopyRect is performed on the remote desktop image, and the
+// destination rectangle would normally be repainted from the image.
+// ScreenCopier instead moves the pixels on screen, using Graphics.copyArea(),
+// so that only the parts of the screen that were not covered by the source
+// rectangle (such as the newly exposed strip of a scrolled window) have to
+// be repainted.
+//
+// This is only valid if the source rectangle on screen contains the same
+// pixels that the source rectangle of the remote desktop image contained when
+// the CopyRect was performed.  Thus, ScreenCopier keeps track of the parts of
+// the screen that are out of date (those that were changed by framebuffer
+// updates that have been published to the front buffer but not yet painted),
+// and a CopyRect is painted normally if its source rectangle overlaps an
+// out-of-date part of the screen or a part of the remote desktop image that
+// was changed earlier in the same update.  This requires double buffering,
+// since otherwise the EDT can paint the result of a CopyRect before the
+// CopyRect is published.  CopyRects are also painted normally if the remote
+// desktop image is scaled, if the source or destination rectangle is not
+// fully visible, if the viewer window is not the active window (in which case
+// another window, such as the profiling dialog, may be covering it), or if
+// the source or destination rectangle may be covered by a popup, a tooltip,
+// or another component in a higher layer of the window's layered pane.
+// Since the EDT may not have processed all pending repaints yet, CopyRects
+// are also painted normally if their source rectangle overlaps a dirty
+// region that the RepaintManager has not yet painted.
+//
+// Screen copies are enabled by default if double buffering is enabled (using
+// the turbovnc.doublebuffer system property.)  Setting the
+// turbovnc.screencopy system property to false disables them.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import java.util.ArrayList;
+import javax.swing.*;
+
+import com.turbovnc.rfb.*;
+
+final class ScreenCopier {
+
+  static final boolean ENABLED =
+    Utils.getBooleanProperty("turbovnc.screencopy", true);
+
+  // Maximum number of CopyRects that can be waiting to be performed on screen.
+  // Any additional CopyRects are painted normally.
+  static final int MAX_COPIES = 16;
+
+  // RFB thread: Record a CopyRect that has been performed on the remote
+  // desktop image.  damage is the region of the image that has changed during
+  // the current update.  Returns false if the CopyRect cannot be performed on
+  // screen, in which case the caller must damage the destination rectangle.
+  boolean add(int x, int y, int w, int h, int srcX, int srcY,
+              DamageRegion damage) {
+    if (newCount == MAX_COPIES || damage.intersects(srcX, srcY, w, h))
+      return false;
+    set(newCopies, newCount++, x, y, w, h, srcX, srcY);
+    return true;
+  }
+
+  // RFB thread: Publish the damaged regions of the remote desktop image, along
+  // with the destination rectangles of the CopyRects that were recorded during
+  // the current update, and queue the CopyRects to be performed on screen.
+  void publish(PlatformPixelBuffer im, DamageRegion damage) {
+    published.set(damage);
+    for (int i = 0; i < newCount; i++) {
+      int off = i * FIELDS;
+      published.add(newCopies[off], newCopies[off + 1], newCopies[off + 2],
+                    newCopies[off + 3]);
+    }
+    // This must be atomic, so that the EDT never paints the result of a
+    // CopyRect that it will later perform on screen.
+    synchronized (im.frontLock) {
+      im.publish(published);
+      for (int i = 0; i < newCount; i++) {
+        int off = i * FIELDS;
+        int x = newCopies[off], y = newCopies[off + 1];
+        int w = newCopies[off + 2], h = newCopies[off + 3];
+        int srcX = newCopies[off + 4], srcY = newCopies[off + 5];
+        if (count == MAX_COPIES || unpainted.intersects(srcX, srcY, w, h))
+          unpainted.add(x, y, w, h);
+        else
+          set(copies, count++, x, y, w, h, srcX, srcY);
+      }
+      unpainted.add(damage);
+    }
+    newCount = 0;
+  }
+
+  // RFB thread: Returns true if no CopyRects have been recorded during the
+  // current update
+  boolean isEmpty() { return newCount == 0; }
+
+  // EDT, with frontLock held: Perform the queued CopyRects on screen, if
+  // possible.  Returns the region that must be painted, which includes the
+  // given region and any parts of the screen that are out of date.  dx and dy
+  // are the offset of the remote desktop image within the component, and
+  // direct is true if the component is painted directly to the screen, the
+  // remote desktop image is not scaled, and the component's window is the
+  // active window.
+  DamageRegion apply(JComponent c, int dx, int dy, boolean direct,
+                     DamageRegion region) {
+    Graphics g = null;
+    Rectangle visible = null;
+    if (count > 0 && direct && c.isShowing()) {
+      g = c.getGraphics();
+      // Copying pixels with a fractional high DPI scaling factor could
+      // produce seams, so in that case, the CopyRects are painted normally.
+      if (g != null && (((Graphics2D)g).getTransform().getScaleX() != 1.0 ||
+                        ((Graphics2D)g).getTransform().getScaleY() != 1.0)) {
+        g.dispose();
+        g = null;
+      }
+      visible = c.getVisibleRect();
+      findObscured(c);
+    }
+    for (int i = 0; i < count; i++) {
+      int off = i * FIELDS;
+      int x = copies[off], y = copies[off + 1];
+      int w = copies[off + 2], h = copies[off + 3];
+      int srcX = copies[off + 4], srcY = copies[off + 5];
+      if (g == null || failed.intersects(srcX, srcY, w, h) ||
+          !visible.contains(srcX + dx, srcY + dy, w, h) ||
+          !visible.contains(x + dx, y + dy, w, h) ||
+          isObscured(srcX + dx, srcY + dy, w, h) ||
+          isObscured(x + dx, y + dy, w, h) ||
+          isDirty(srcX + dx, srcY + dy, w, h)) {
+        failed.add(x, y, w, h);
+        continue;
+      }
+      g.copyArea(srcX + dx, srcY + dy, w, h, x - srcX, y - srcY);
+    }
+    if (g != null)
+      g.dispose();
+    count = 0;
+    obscured.clear();
+    dirty.clear();
+
+    toPaint.set(region);
+    toPaint.add(unpainted);
+    toPaint.add(failed);
+    unpainted.clear();
+    failed.clear();
+    return toPaint;
+  }
+
+  // EDT: Find the rectangles, in the coordinate space of c, that are covered
+  // by components in a higher layer of the layered pane than c (such as
+  // lightweight popups and tooltips) or by windows owned by c's window (such
+  // as heavyweight popups and tooltips), as well as the rectangles that the
+  // RepaintManager will repaint in c and its ancestors.
+  private void findObscured(JComponent c) {
+    JRootPane rootPane = SwingUtilities.getRootPane(c);
+    if (rootPane != null) {
+      JLayeredPane layeredPane = rootPane.getLayeredPane();
+      Component ancestor = c;
+      while (ancestor != null && ancestor.getParent() != layeredPane)
+        ancestor = ancestor.getParent();
+      int layer = ancestor != null ? layeredPane.getLayer(ancestor) :
+                                     JLayeredPane.FRAME_CONTENT_LAYER;
+      for (Component comp : layeredPane.getComponents()) {
+        if (comp != ancestor && comp.isVisible() &&
+            layeredPane.getLayer(comp) > layer)
+          obscured.add(SwingUtilities.convertRectangle(layeredPane,
+                                                       comp.getBounds(), c));
+      }
+    }
+
+    Window window = SwingUtilities.getWindowAncestor(c);
+    if (window != null) {
+      java.awt.Point origin = c.getLocationOnScreen();
+      for (Window owned : window.getOwnedWindows()) {
+        if (owned.isShowing()) {
+          Rectangle r = owned.getBounds();
+          r.translate(-origin.x, -origin.y);
+          obscured.add(r);
+        }
+      }
+    }
+
+    RepaintManager rm = RepaintManager.currentManager(c);
+    for (Component comp = c; comp != null && !(comp instanceof Window);
+         comp = comp.getParent()) {
+      if (!(comp instanceof JComponent))
+        continue;
+      Rectangle r = rm.getDirtyRegion((JComponent)comp);
+      if (!r.isEmpty())
+        dirty.add(comp == c ? r : SwingUtilities.convertRectangle(comp, r, c));
+    }
+  }
+
+  private boolean isObscured(int x, int y, int w, int h) {
+    for (Rectangle r : obscured)
+      if (r.intersects(x, y, w, h))
+        return true;
+    return false;
+  }
+
+  private boolean isDirty(int x, int y, int w, int h) {
+    for (Rectangle r : dirty)
+      if (r.intersects(x, y, w, h))
+        return true;
+    return false;
+  }
+
+  // With frontLock held: Paint the destination rectangles of the queued
+  // CopyRects normally rather than performing the CopyRects on screen.  This
+  // must be called whenever the screen is painted from the remote desktop
+  // image outside of apply(), since the screen may then contain the results
+  // of the queued CopyRects.
+  void invalidate() {
+    for (int i = 0; i < count; i++) {
+      int off = i * FIELDS;
+      unpainted.add(copies[off], copies[off + 1], copies[off + 2],
+                    copies[off + 3]);
+    }
+    count = 0;
+  }
+
+  private static void set(int[] a, int i, int x, int y, int w, int h,
+                          int srcX, int srcY) {
+    int off = i * FIELDS;
+    a[off] = x;  a[off + 1] = y;  a[off + 2] = w;  a[off + 3] = h;
+    a[off + 4] = srcX;  a[off + 5] = srcY;
+  }
+
+  // Each CopyRect is stored as {x, y, w, h, srcX, srcY}.
+  private static final int FIELDS = 6;
+
+  // CopyRects recorded during the current update (RFB thread only)
+  private final int[] newCopies = new int[MAX_COPIES * FIELDS];
+  private int newCount;
+  private final DamageRegion published = new DamageRegion();
+
+  // Access to the following must be synchronized on the pixel buffer's
+  // frontLock:
+  // CopyRects waiting to be performed on screen
+  private final int[] copies = new int[MAX_COPIES * FIELDS];
+  private int count;
+  // Parts of the screen that are out of date
+  private final DamageRegion unpainted = new DamageRegion();
+
+  // EDT only
+  private final DamageRegion failed = new DamageRegion();
+  private final DamageRegion toPaint = new DamageRegion();
+  private final ArrayList<Rectangle> obscured = new ArrayList<Rectangle>();
+  private final ArrayList<Rectangle> dirty = new ArrayList<Rectangle>();
+}
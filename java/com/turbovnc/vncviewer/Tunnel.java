@@ -444,7 +444,15 @@ public class Tunnel {
   protected static Socket connectUDSDirect(String udsPath) {
     udsPath = expandUDSPathLocal(udsPath);
 
-    vlog.debug("Connecting to Unix domain socket: " + udsPath);
+    // Connect directly using a Unix domain socket channel, if the JVM
+    // supports it, rather than relaying the connection through socat.
+    if (UnixSocket.isSupported() &&
+        Utils.getBooleanProperty("turbovnc.nativeuds", true)) {
+      vlog.debug("Connecting to Unix domain socket: " + udsPath);
+      return new UnixSocket(udsPath);
+    }
+
+    vlog.debug("Connecting to Unix domain socket using socat: " + udsPath);
     try {
       ProcessBuilder pb =
         new ProcessBuilder("socat", "stdio",
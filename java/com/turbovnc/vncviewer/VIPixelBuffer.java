@@ -0,0 +1,159 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// VIPixelBuffer
+//
+// The decoders write to the BufferedImage in BIPixelBuffer.  Because we access
+// the image's data array directly, Java 2D cannot cache the image in video
+// memory, so every call to drawImage() transfers all of the pixels that are
+// drawn from system memory to the Java 2D pipeline (the X server, OpenGL,
+// etc.)  VIPixelBuffer instead keeps a copy of the remote desktop image in a
+// VolatileImage, which Java 2D can store in video memory.  When a framebuffer
+// update is complete, the 64x64 tiles that it changed are marked dirty, and
+// only the dirty tiles are transferred to the VolatileImage before the
+// VolatileImage is drawn.  If the contents of the VolatileImage are lost, then
+// the whole image is transferred again.
+//
+// VIPixelBuffer is enabled by setting the turbovnc.volatileimage system
+// property to true.
+
+package com.turbovnc.vncviewer;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.Arrays;
+
+class VIPixelBuffer extends BIPixelBuffer {
+
+  static final int TILE_SIZE = 64;
+
+  VIPixelBuffer(int w, int h, CConn cc_, DesktopWindow desktop_) {
+    super(w, h, cc_, desktop_);
+  }
+
+  // RFB thread
+  public void publish(DamageRegion region) {
+    super.publish(region);
+    synchronized (frontLock) {
+      if (frontImage == null || allDirty)
+        return;
+      checkTiles(frontImage.getWidth(), frontImage.getHeight());
+      for (int i = 0; i < region.size(); i++) {
+        int tx0 = Math.max(region.x(i), 0) / TILE_SIZE;
+        int ty0 = Math.max(region.y(i), 0) / TILE_SIZE;
+        int tx1 = Math.min((region.x(i) + region.width(i) + TILE_SIZE - 1) /
+                           TILE_SIZE, tilesX);
+        int ty1 = Math.min((region.y(i) + region.height(i) + TILE_SIZE - 1) /
+                           TILE_SIZE, tilesY);
+        for (int ty = ty0; ty < ty1; ty++)
+          for (int tx = tx0; tx < tx1; tx++)
+            dirty[ty * tilesX + tx] = true;
+      }
+    }
+  }
+
+  // frontLock must be held when getImage() is called, and the returned image
+  // must be drawn before frontLock is released.
+  public Image getImage() {
+    BufferedImage src = frontImage;
+    if (src == null)
+      return null;
+    GraphicsConfiguration gc = null;
+    if (desktop != null)
+      gc = desktop.getGraphicsConfiguration();
+    if (gc == null)
+      gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+           .getDefaultScreenDevice().getDefaultConfiguration();
+    int w = src.getWidth(), h = src.getHeight();
+
+    // A new front image is created whenever the framebuffer is resized or its
+    // pixel format or colour map changes.
+    if (src != lastSrc) {
+      lastSrc = src;
+      allDirty = true;
+    }
+    int status = VolatileImage.IMAGE_INCOMPATIBLE;
+    if (vi != null && vi.getWidth() == w && vi.getHeight() == h)
+      status = vi.validate(gc);
+    if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+      if (vi != null)
+        vi.flush();
+      vi = gc.createCompatibleVolatileImage(w, h);
+      vi.validate(gc);
+      allDirty = true;
+    } else if (status == VolatileImage.IMAGE_RESTORED) {
+      allDirty = true;
+    }
+    checkTiles(w, h);
+
+    Graphics2D g2 = vi.createGraphics();
+    g2.setComposite(AlphaComposite.Src);
+    if (allDirty) {
+      g2.drawImage(src, 0, 0, null);
+      Arrays.fill(dirty, false);
+      allDirty = false;
+    } else {
+      // Transfer each horizontal run of dirty tiles with one drawImage() call.
+      for (int ty = 0; ty < tilesY; ty++) {
+        int y0 = ty * TILE_SIZE, y1 = Math.min(y0 + TILE_SIZE, h);
+        for (int tx = 0; tx < tilesX; tx++) {
+          if (!dirty[ty * tilesX + tx])
+            continue;
+          int txEnd = tx;
+          while (txEnd < tilesX && dirty[ty * tilesX + txEnd])
+            dirty[ty * tilesX + txEnd++] = false;
+          int x0 = tx * TILE_SIZE, x1 = Math.min(txEnd * TILE_SIZE, w);
+          g2.drawImage(src, x0, y0, x1, y1, x0, y0, x1, y1, null);
+          tx = txEnd;
+        }
+      }
+    }
+    g2.dispose();
+    return vi;
+  }
+
+  // EDT: If the contents of the VolatileImage were lost while it was being
+  // drawn, then the caller must draw it again.
+  public boolean contentsLost() {
+    synchronized (frontLock) {
+      if (vi != null && vi.contentsLost()) {
+        allDirty = true;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void checkTiles(int w, int h) {
+    int tx = (w + TILE_SIZE - 1) / TILE_SIZE;
+    int ty = (h + TILE_SIZE - 1) / TILE_SIZE;
+    if (dirty == null || tx != tilesX || ty != tilesY) {
+      tilesX = tx;
+      tilesY = ty;
+      dirty = new boolean[tx * ty];
+      allDirty = true;
+    }
+  }
+
+  // Access to the following must be synchronized on frontLock:
+  private VolatileImage vi;
+  private BufferedImage lastSrc;
+  private boolean[] dirty;
+  private int tilesX, tilesY;
+  private boolean allDirty;
+}
@@ -874,7 +874,7 @@ public final class Viewport extends JFrame implements Runnable {
               lastEvent.valuators[4] = (int)(tiltY * 63.0 + 0.5);
 
               lastEvent.print();
-              cc.writer().writeGIIEvent(dev, lastEvent);
+              cc.writeGIIEvent(dev, lastEvent);
             }
           }
         });
@@ -183,7 +183,8 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
 
   static void setLookAndFeel() {
     if (Utils.getBooleanProperty("turbovnc.autotest", false) ||
-        Utils.getBooleanProperty("turbovnc.sshkeytest", false))
+        Utils.getBooleanProperty("turbovnc.sshkeytest", false) ||
+        GraphicsEnvironment.isHeadless())
       return;
 
     try {
@@ -261,7 +262,8 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
 
   static void setGlobalInsets() {
     if (Utils.getBooleanProperty("turbovnc.autotest", false) ||
-        Utils.getBooleanProperty("turbovnc.sshkeytest", false))
+        Utils.getBooleanProperty("turbovnc.sshkeytest", false) ||
+        GraphicsEnvironment.isHeadless())
       return;
 
     try {
@@ -472,7 +474,8 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
         if (argv[i].equalsIgnoreCase("-bench")) {
           if (i < argv.length - 1) {
             try {
-              benchFile = new FileInStream(argv[++i]);
+              benchFileName = argv[++i];
+              benchFile = new FileInStream(benchFileName);
             } catch (Exception e) {
               reportException(
                 new WarningException("Could not open session capture:\n" +
@@ -499,6 +502,22 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
           continue;
         }
 
+        if (argv[i].equalsIgnoreCase("-benchheadless")) {
+          benchHeadless = true;
+          continue;
+        }
+
+        if (argv[i].equalsIgnoreCase("-benchblit")) {
+          benchBlit = true;
+          continue;
+        }
+
+        if (argv[i].equalsIgnoreCase("-benchjson")) {
+          if (i < argv.length - 1)
+            benchJSONFile = argv[++i];
+          continue;
+        }
+
         if (argv[i].equals("-??")) {
           System.out.print("\nThe advanced parameters are:\n\n");
           params.list(true);
@@ -834,8 +853,19 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
       }
     }
 
+    // The headless benchmark doesn't create any windows, so it can be run on
+    // machines that have no display.
+    if (benchFile != null &&
+        (benchHeadless || GraphicsEnvironment.isHeadless()))
+      exit(HeadlessBenchmark.run(benchFile, benchFileName, benchIter,
+                                 benchWarmup, params.colors.get(), benchBlit,
+                                 benchJSONFile));
+
     double tAvg = 0.0, tAvgDecode = 0.0, tAvgBlit = 0.0;
     if (benchFile == null) { benchIter = 1;  benchWarmup = 0; }
+    if (benchFile != null)
+      System.out.format("zlib backend: %s\n\n",
+                        ZlibInflater.getDefaultBackend());
 
     for (int i = 0; i < benchIter + benchWarmup; i++) {
       double tStart = 0.0, tTotal;
@@ -961,8 +991,11 @@ public final class VncViewer implements Runnable, OptionsDialogCallback {
   static int nViewers;
   static LogWriter vlog = new LogWriter("main");
   FileInStream benchFile;
+  String benchFileName;
   int benchIter = 1;
   int benchWarmup = 0;
+  boolean benchHeadless, benchBlit;
+  String benchJSONFile;
   private Params params;
   static boolean forceAlpha;
   OptionsDialog options;
@@ -0,0 +1,155 @@
+/* Copyright (C) 2026 D. R. Commander.  All Rights Reserved.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301,
+ * USA.
+ */
+
+// -=- VectorPixelLoops - implementations of the PixelLoops methods that use
+// the incubating Vector API.  This class is compiled separately, with
+// --add-modules jdk.incubator.vector, and it is stored under
+// META-INF/versions/17 in VncViewer.jar.  PixelLoops.createVector() loads it
+// only if the jdk.incubator.vector module is present.
+
+package com.turbovnc.rfb;
+
+import jdk.incubator.vector.*;
+
+final class VectorPixelLoops extends PixelLoops {
+
+  static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+  static final int LANES = INT_SPECIES.length();
+  // Each vector of 32-bit pixels is unpacked from a byte vector of the same
+  // size, which holds LANES 24-bit RGB pixels plus LANES unused bytes.
+  static final VectorSpecies<Byte> BYTE_SPECIES =
+    VectorSpecies.of(byte.class, INT_SPECIES.vectorShape());
+
+  VectorPixelLoops() {
+    // expandMono() consumes whole bytes of the bitmap, and it gathers the bits
+    // for each vector into an int.
+    if (LANES < 8 || LANES > 32)
+      throw new UnsupportedOperationException(INT_SPECIES.toString() +
+                                              " is not supported");
+  }
+
+  // unpackRGB() moves the red, green, and blue bytes of each pixel into the
+  // appropriate bytes of the corresponding 32-bit lane.  This only works if
+  // the shifts are whole bytes, which they are with all of the 888 pixel
+  // formats that are used in practice.  The shuffles for all combinations of
+  // shifts are created in advance, so that unpackRGB() never allocates.
+  private static final VectorShuffle<Byte>[] RGB_SHUFFLES = rgbShuffles();
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static VectorShuffle<Byte>[] rgbShuffles() {
+    VectorShuffle<Byte>[] shuffles = new VectorShuffle[64];
+    int[] map = new int[LANES * 4];
+    for (int r = 0; r < 4; r++) {
+      for (int g = 0; g < 4; g++) {
+        for (int b = 0; b < 4; b++) {
+          if (r == g || g == b || r == b)
+            continue;
+          for (int i = 0; i < LANES; i++) {
+            // The unused byte is masked off after the shuffle.
+            map[i * 4] = map[i * 4 + 1] = map[i * 4 + 2] =
+              map[i * 4 + 3] = i * 3;
+            map[i * 4 + r] = i * 3;
+            map[i * 4 + g] = i * 3 + 1;
+            map[i * 4 + b] = i * 3 + 2;
+          }
+          shuffles[r * 16 + g * 4 + b] =
+            VectorShuffle.fromArray(BYTE_SPECIES, map, 0);
+        }
+      }
+    }
+    return shuffles;
+  }
+
+  void unpackRGB(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+                 int rShift, int gShift, int bShift, int alphaMask) {
+    int x = 0;
+    if (((rShift | gShift | bShift) & 7) == 0 && rShift <= 24 &&
+        gShift <= 24 && bShift <= 24) {
+      VectorShuffle<Byte> shuffle =
+        RGB_SHUFFLES[rShift / 8 * 16 + gShift / 8 * 4 + bShift / 8];
+      if (shuffle != null) {
+        int rgbMask = 0xff << rShift | 0xff << gShift | 0xff << bShift;
+        // Each iteration loads LANES * 4 bytes but consumes only LANES * 3.
+        int srcEnd = src.length - LANES * 4;
+        for (; x <= w - LANES && srcPtr <= srcEnd;
+             x += LANES, srcPtr += LANES * 3)
+          ByteVector.fromArray(BYTE_SPECIES, src, srcPtr)
+            .rearrange(shuffle).reinterpretAsInts()
+            .and(rgbMask).or(alphaMask)
+            .intoArray(dst, dstPtr + x);
+      }
+    }
+    if (x < w)
+      super.unpackRGB(src, srcPtr, dst, dstPtr + x, w - x, rShift, gShift,
+                      bShift, alphaMask);
+  }
+
+  // The bit in each lane that selects the pixel for that lane, given LANES
+  // bits of the bitmap (MSB first)
+  private static final IntVector LANE_BITS =
+    IntVector.fromArray(INT_SPECIES, laneBits(), 0);
+
+  private static int[] laneBits() {
+    int[] bits = new int[LANES];
+    for (int i = 0; i < LANES; i++)
+      bits[i] = 1 << (LANES - 1 - i);
+    return bits;
+  }
+
+  void expandMono(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+                  int p0, int p1) {
+    IntVector v0 = IntVector.broadcast(INT_SPECIES, p0);
+    IntVector v1 = IntVector.broadcast(INT_SPECIES, p1);
+    int x = 0;
+    for (; x <= w - LANES; x += LANES) {
+      int bits = 0;
+      for (int i = 0; i < LANES / 8; i++)
+        bits = bits << 8 | (src[srcPtr++] & 0xff);
+      v0.blend(v1, LANE_BITS.and(bits).compare(VectorOperators.NE, 0))
+        .intoArray(dst, dstPtr + x);
+    }
+    if (x < w)
+      super.expandMono(src, srcPtr, dst, dstPtr + x, w - x, p0, p1);
+  }
+
+  // The palette indices for one vector, widened to 32 bits.  The Vector API
+  // can only gather using indices that are stored in an int array.
+  private static final ThreadLocal<int[]> INDICES =
+    ThreadLocal.withInitial(() -> new int[LANES]);
+  static final VectorSpecies<Byte> INDEX_SPECIES =
+    VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * 8));
+
+  void lookup(byte[] src, int srcPtr, int[] dst, int dstPtr, int w,
+              int[] pal) {
+    int x = 0;
+    if (w >= LANES && srcPtr <= src.length - w) {
+      int[] indices = INDICES.get();
+      for (; x <= w - LANES; x += LANES, srcPtr += LANES) {
+        ((IntVector)ByteVector.fromArray(INDEX_SPECIES, src, srcPtr)
+          .convertShape(VectorOperators.B2I, INT_SPECIES, 0))
+          .and(0xff).intoArray(indices, 0);
+        IntVector.fromArray(INT_SPECIES, pal, 0, indices, 0)
+          .intoArray(dst, dstPtr + x);
+      }
+    }
+    if (x < w)
+      super.lookup(src, srcPtr, dst, dstPtr + x, w - x, pal);
+  }
+
+  public String toString() { return INT_SPECIES.toString(); }
+}